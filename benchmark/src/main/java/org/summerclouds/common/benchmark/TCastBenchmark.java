@@ -0,0 +1,68 @@
+/**
+ * Copyright (C) 2022 Mike Hummel (mh@mhus.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.summerclouds.common.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.summerclouds.common.internal.TCast;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TCastBenchmark {
+
+    private Object intString = "123456";
+    private Object longString = "1234567890123";
+    private Object boolString = "yes";
+    private Object number = Integer.valueOf(4711);
+
+    @Benchmark
+    public int toint() {
+        return TCast.toint(intString, 0);
+    }
+
+    @Benchmark
+    public long tolong() {
+        return TCast.tolong(longString, 0);
+    }
+
+    @Benchmark
+    public Object toTypeInteger() {
+        return TCast.toType(intString, Integer.class, null);
+    }
+
+    @Benchmark
+    public Object toTypeBoolean() {
+        return TCast.toType(boolString, Boolean.class, null);
+    }
+
+    @Benchmark
+    public Object toTypeString() {
+        return TCast.toType(number, String.class, null);
+    }
+}
@@ -0,0 +1,70 @@
+/**
+ * Copyright (C) 2022 Mike Hummel (mh@mhus.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.summerclouds.common.benchmark;
+
+import java.io.EOFException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.summerclouds.common.internal.TCircularByteBuffer;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TCircularByteBufferBenchmark {
+
+    private TCircularByteBuffer buffer;
+    private byte[] block = new byte[1024];
+    private byte[] target = new byte[1024];
+
+    @Setup
+    public void setup() {
+        buffer = new TCircularByteBuffer(4096);
+        // start in the middle to benchmark the wrap around
+        buffer.put(new byte[1500]);
+        buffer.get(new byte[1500]);
+    }
+
+    @Benchmark
+    public byte putGet() throws EOFException {
+        buffer.put((byte) 42);
+        return buffer.get();
+    }
+
+    @Benchmark
+    public int putGetBlock() {
+        buffer.put(block);
+        return buffer.get(target);
+    }
+
+    @Benchmark
+    public int putGetInt() throws EOFException {
+        buffer.putInt(4711);
+        return buffer.getInt();
+    }
+}
@@ -0,0 +1,61 @@
+/**
+ * Copyright (C) 2022 Mike Hummel (mh@mhus.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.summerclouds.common.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.summerclouds.common.internal.TString;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TStringBenchmark {
+
+    private String list = "alpha,beta,gamma,,delta,epsilon,zeta,eta,theta,iota,kappa";
+    private String text =
+            "The quick brown fox jumps over the lazy dog. The lazy dog sleeps. The end.";
+    private Object[] message =
+            new Object[] {"Test", Integer.valueOf(12), new String[] {"a", "b"}, null, 1.5d};
+
+    @Benchmark
+    public String[] split() {
+        return TString.split(list, ",");
+    }
+
+    @Benchmark
+    public String replaceAll() {
+        return TString.replaceAll(text, "lazy", "sleepy");
+    }
+
+    @Benchmark
+    public String serialize() {
+        StringBuilder sb = new StringBuilder();
+        TString.serialize(sb, message, 10000);
+        return sb.toString();
+    }
+}
@@ -0,0 +1,69 @@
+/**
+ * Copyright (C) 2022 Mike Hummel (mh@mhus.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.summerclouds.common.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.summerclouds.common.internal.TXml;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TXmlBenchmark {
+
+    private String xml;
+    private Element root;
+
+    @Setup
+    public void setup() throws Exception {
+        StringBuilder sb = new StringBuilder("<project><parent><version>1.0</version></parent>");
+        sb.append("<dependencies>");
+        for (int i = 0; i < 50; i++)
+            sb.append("<dependency><artifactId>lib")
+                    .append(i)
+                    .append("</artifactId><version>")
+                    .append(i)
+                    .append(".0</version></dependency>");
+        sb.append("</dependencies></project>");
+        xml = sb.toString();
+        root = TXml.loadXml(xml).getDocumentElement();
+    }
+
+    @Benchmark
+    public Document loadXml() throws Exception {
+        return TXml.loadXml(xml);
+    }
+
+    @Benchmark
+    public Element getElementByPath() {
+        return TXml.getElementByPath(root, "/dependencies/dependency[25]/version");
+    }
+}
@@ -78,6 +78,45 @@ public class TCircularByteBuffer extends TAbstractByteBuffer {
         if (nextPut >= size) nextPut = 0;
     }
 
+    /**
+     * Puts the bytes from buf into the buffer, if the buffer is full the oldest bytes are dropped.
+     * The buffer keeps the tail of the written data, e.g. the last lines of a log.
+     *
+     * @param buf
+     * @param off
+     * @param len
+     * @return the amount of dropped bytes
+     */
+    public int putOverwrite(byte[] buf, int off, int len) {
+        if (off < 0) throw new IllegalArgumentException("off < 0");
+
+        if (len < 0) throw new IllegalArgumentException("len < 0");
+
+        if (off + len > buf.length) throw new IllegalArgumentException("off+len > buf.length");
+
+        if (len == 0 || size == 0) return len;
+
+        int dropped = 0;
+        if (len > size) {
+            dropped = len - size;
+            off += dropped;
+            len = size;
+        }
+        int free = size - length;
+        if (len > free) {
+            int drop = len - free;
+            nextGet = (nextGet + drop) % size;
+            length -= drop;
+            dropped += drop;
+        }
+        int first = Math.min(len, size - nextPut);
+        System.arraycopy(buf, off, this.buf, nextPut, first);
+        System.arraycopy(buf, off + first, this.buf, 0, len - first);
+        nextPut = (nextPut + len) % size;
+        length += len;
+        return dropped;
+    }
+
     /**
      * check if space is nearly full and a next integer will not be able to be stored
      *
@@ -16,11 +16,46 @@
 package org.summerclouds.common.internal;
 
 import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Log factory printing to the console. Each message is formatted into one string and printed at
+ * once, lines of different threads are not mixed.
+ *
+ * <p>In asynchronous mode (setAsync(true) or the property
+ * org.summerclouds.common.internal.TConsoleFactory_async=true) the callers format into
+ * preallocated records and hand them to a bounded queue (TConsoleFactory_queue, default 4096). A
+ * single writer thread prints the queued records in batches. If the queue is full the overflow
+ * policy (TConsoleFactory_overflow) decides to block the caller or to drop the message. The
+ * output of the writer thread is not captured per test by TestConsole, call flush() to wait for
+ * pending messages, TestCase flushes at the end of each test. At exit the pending messages are
+ * printed within TConsoleFactory_exitTimeout milliseconds (default 5000).
+ */
 public class TConsoleFactory extends TLogFactory {
 
+    public enum OVERFLOW {
+        /** Wait for free space in the queue */
+        BLOCK,
+        /** Drop the message */
+        DROP,
+        /** Drop TRACE, DEBUG and INFO messages, wait for the others */
+        DROP_BELOW_WARN
+    }
+
     public static int FIX_NAME_LENGTH = 30;
     // public static boolean tracing = true;
+    private static volatile boolean async =
+            TCast.toboolean(TSystem.getProperty(TConsoleFactory.class, "async", "false"), false);
+    private static volatile OVERFLOW overflow =
+            toOverflow(TSystem.getProperty(TConsoleFactory.class, "overflow", ""));
+    private static AsyncWriter writer;
     private boolean traces = true;
     private boolean printTime = true;
     private PrintStream out;
@@ -49,6 +84,64 @@ public class TConsoleFactory extends TLogFactory {
         this.level = level;
     }
 
+    public static boolean isAsync() {
+        return async;
+    }
+
+    /**
+     * Switch the asynchronous mode for all console logs.
+     *
+     * @param async true to print by the writer thread
+     */
+    public static void setAsync(boolean async) {
+        if (!async) flush();
+        TConsoleFactory.async = async;
+    }
+
+    public static OVERFLOW getOverflow() {
+        return overflow;
+    }
+
+    public static void setOverflow(OVERFLOW overflow) {
+        TConsoleFactory.overflow = overflow;
+    }
+
+    /** @return number of messages dropped in asynchronous mode */
+    public static long getDropped() {
+        AsyncWriter w = writer;
+        return w == null ? 0 : w.dropped.get();
+    }
+
+    /** Wait until all messages queued in asynchronous mode are printed. */
+    public static void flush() {
+        flush(-1);
+    }
+
+    /**
+     * Wait until all messages queued in asynchronous mode are printed.
+     *
+     * @param timeout Maximum time to wait in milliseconds, negative to wait without limit
+     * @return false if messages are pending after the timeout
+     */
+    public static boolean flush(long timeout) {
+        AsyncWriter w = writer;
+        return w == null || w.flush(timeout);
+    }
+
+    private static OVERFLOW toOverflow(String value) {
+        for (OVERFLOW o : OVERFLOW.values()) if (o.name().equalsIgnoreCase(value)) return o;
+        return OVERFLOW.BLOCK;
+    }
+
+    private static synchronized AsyncWriter getWriter() {
+        if (writer == null) {
+            int size =
+                    TCast.toint(TSystem.getProperty(TConsoleFactory.class, "queue", "4096"), 4096);
+            writer = new AsyncWriter(Math.max(1, size));
+        }
+        return writer;
+    }
+
     private class ConsoleLog extends TLogEngine {
 
         private String fixName;
@@ -60,93 +153,49 @@ public class TConsoleFactory extends TLogFactory {
         @Override
         public void debug(Object message) {
             if (!isDebugEnabled()) return;
-            out.print(printTime());
-            out.print("DEBUG ");
-            out.print(getFixName());
-            out.print(" ");
-            out.println(message);
-            if (message != null && message instanceof Throwable)
-                ((Throwable) message).printStackTrace(out);
+            log(TLog.LEVEL.DEBUG, "DEBUG ", message, toThrowable(message));
         }
 
         @Override
         public void debug(Object message, Throwable t) {
             if (!isDebugEnabled()) return;
-            out.print(printTime());
-            out.print("DEBUG ");
-            out.print(getFixName());
-            out.print(" ");
-            out.println(message);
-            if (t != null && traces) t.printStackTrace(out);
+            log(TLog.LEVEL.DEBUG, "DEBUG ", message, t);
         }
 
         @Override
         public void error(Object message) {
             if (!isErrorEnabled()) return;
-            out.print(printTime());
-            out.print("ERROR ");
-            out.print(getFixName());
-            out.print(" ");
-            out.println(message);
-            if (message != null && message instanceof Throwable && traces)
-                ((Throwable) message).printStackTrace(out);
+            log(TLog.LEVEL.ERROR, "ERROR ", message, toThrowable(message));
         }
 
         @Override
         public void error(Object message, Throwable t) {
             if (!isErrorEnabled()) return;
-            out.print(printTime());
-            out.print("ERROR ");
-            out.print(getFixName());
-            out.print(" ");
-            out.println(message);
-            if (t != null && traces) t.printStackTrace(out);
+            log(TLog.LEVEL.ERROR, "ERROR ", message, t);
         }
 
         @Override
         public void fatal(Object message) {
             if (!isFatalEnabled()) return;
-            out.print(printTime());
-            out.print("FATAL ");
-            out.print(getFixName());
-            out.print(" ");
-            out.println(message);
-            if (message != null && message instanceof Throwable && traces)
-                ((Throwable) message).printStackTrace(out);
+            log(TLog.LEVEL.FATAL, "FATAL ", message, toThrowable(message));
         }
 
         @Override
         public void fatal(Object message, Throwable t) {
             if (!isFatalEnabled()) return;
-            out.print(printTime());
-            out.print("FATAL ");
-            out.print(getFixName());
-            out.print(" ");
-            out.println(message);
-            if (t != null && traces) t.printStackTrace(out);
+            log(TLog.LEVEL.FATAL, "FATAL ", message, t);
         }
 
         @Override
         public void info(Object message) {
             if (!isInfoEnabled()) return;
-            out.print(printTime());
-            out.print("INFO  ");
-            out.print(getFixName());
-            out.print(" ");
-            out.println(message);
-            if (message != null && message instanceof Throwable && traces)
-                ((Throwable) message).printStackTrace(out);
+            log(TLog.LEVEL.INFO, "INFO  ", message, toThrowable(message));
         }
 
         @Override
         public void info(Object message, Throwable t) {
             if (!isInfoEnabled()) return;
-            out.print(printTime());
-            out.print("INFO  ");
-            out.print(getFixName());
-            out.print(" ");
-            out.println(message);
-            if (t != null && traces) t.printStackTrace(out);
+            log(TLog.LEVEL.INFO, "INFO  ", message, t);
         }
 
         @Override
@@ -182,47 +231,49 @@ public class TConsoleFactory extends TLogFactory {
         @Override
         public void trace(Object message) {
             if (!isTraceEnabled()) return;
-            out.print(printTime());
-            out.print("TRACE ");
-            out.print(getFixName());
-            out.print(" ");
-            out.println(message);
-            if (message != null && message instanceof Throwable && traces)
-                ((Throwable) message).printStackTrace(out);
+            log(TLog.LEVEL.TRACE, "TRACE ", message, toThrowable(message));
         }
 
         @Override
         public void trace(Object message, Throwable t) {
             if (!isTraceEnabled()) return;
-            out.print(printTime());
-            out.print("TRACE ");
-            out.print(getFixName());
-            out.print(" ");
-            out.println(message);
-            if (t != null && traces) t.printStackTrace(out);
+            log(TLog.LEVEL.TRACE, "TRACE ", message, t);
         }
 
         @Override
         public void warn(Object message) {
             if (!isWarnEnabled()) return;
-            out.print(printTime());
-            out.print("WARN  ");
-            out.print(getFixName());
-            out.print(" ");
-            out.println(message);
-            if (message != null && message instanceof Throwable && traces)
-                ((Throwable) message).printStackTrace(out);
+            log(TLog.LEVEL.WARN, "WARN  ", message, toThrowable(message));
         }
 
         @Override
         public void warn(Object message, Throwable t) {
             if (!isWarnEnabled()) return;
-            out.print(printTime());
-            out.print("WARN  ");
-            out.print(getFixName());
-            out.print(" ");
-            out.println(message);
-            if (t != null && traces) t.printStackTrace(out);
+            log(TLog.LEVEL.WARN, "WARN  ", message, t);
+        }
+
+        private void log(TLog.LEVEL level, String label, Object message, Throwable t) {
+            if (async) {
+                getWriter().write(TConsoleFactory.this, this, level, label, message, t);
+                return;
+            }
+            StringBuilder sb = new StringBuilder();
+            format(sb, label, message, t);
+            out.print(sb);
+        }
+
+        private void format(StringBuilder sb, String label, Object message, Throwable t) {
+            sb.append(printTime()).append(label).append(getFixName()).append(' ');
+            sb.append(message).append(System.lineSeparator());
+            if (t != null && traces) {
+                StringWriter sw = new StringWriter();
+                t.printStackTrace(new PrintWriter(sw));
+                sb.append(sw);
+            }
+        }
+
+        private Throwable toThrowable(Object message) {
+            return message instanceof Throwable ? (Throwable) message : null;
         }
 
         private String getFixName() {
@@ -242,4 +293,144 @@ public class TConsoleFactory extends TLogFactory {
         @Override
         public void close() {}
     }
+
+    private static class Record {
+        private StringBuilder text = new StringBuilder(256);
+        private PrintStream out;
+    }
+
+    private static class AsyncWriter extends Thread {
+
+        private static final int MAX_RECORD_CAPACITY = 16 * 1024;
+        private final BlockingQueue<Record> free;
+        private final BlockingQueue<Record> queue;
+        private final AtomicLong dropped = new AtomicLong();
+        private final AtomicLong queued = new AtomicLong();
+        private long written;
+        private long reportedDropped;
+
+        private AsyncWriter(int size) {
+            // created by the first logging thread, do not inherit its TestConsole capture
+            super(null, null, "TConsoleWriter", 0, false);
+            free = new ArrayBlockingQueue<>(size);
+            queue = new ArrayBlockingQueue<>(size);
+            for (int i = 0; i < size; i++) free.add(new Record());
+            setDaemon(true);
+            setContextClassLoader(TConsoleFactory.class.getClassLoader());
+            start();
+            long exitTimeout =
+                    TCast.tolong(
+                            TSystem.getProperty(TConsoleFactory.class, "exitTimeout", "5000"),
+                            5000);
+            // a blocked console must not block the exit
+            Runtime.getRuntime()
+                    .addShutdownHook(
+                            new Thread(
+                                    null, () -> flush(exitTimeout), "TConsoleFlush", 0, false));
+        }
+
+        private void write(
+                TConsoleFactory factory,
+                ConsoleLog log,
+                TLog.LEVEL level,
+                String label,
+                Object message,
+                Throwable t) {
+            Record record = free.poll();
+            if (record == null) {
+                OVERFLOW policy = overflow;
+                if (policy == OVERFLOW.DROP
+                        || policy == OVERFLOW.DROP_BELOW_WARN
+                                && level.ordinal() < TLog.LEVEL.WARN.ordinal()) {
+                    dropped.incrementAndGet();
+                    return;
+                }
+                try {
+                    record = free.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    dropped.incrementAndGet();
+                    return;
+                }
+            }
+            record.text.setLength(0);
+            log.format(record.text, label, message, t);
+            record.out = factory.out;
+            queued.incrementAndGet();
+            // there is always space, the number of records is the size of the queue
+            queue.add(record);
+        }
+
+        @Override
+        public void run() {
+            List<Record> batch = new ArrayList<>();
+            StringBuilder text = new StringBuilder();
+            while (true) {
+                try {
+                    batch.add(queue.take());
+                } catch (InterruptedException e) {
+                    continue;
+                }
+                queue.drainTo(batch);
+                long d = dropped.get();
+                if (d != reportedDropped && !batch.isEmpty()) {
+                    batch.get(0)
+                            .out
+                            .println("... " + (d - reportedDropped) + " log messages dropped");
+                    reportedDropped = d;
+                }
+                PrintStream current = null;
+                for (Record record : batch) {
+                    if (record.out != current) {
+                        print(current, text);
+                        current = record.out;
+                    }
+                    text.append(record.text);
+                }
+                print(current, text);
+                int count = batch.size();
+                for (Record record : batch) {
+                    if (record.text.capacity() > MAX_RECORD_CAPACITY)
+                        record.text = new StringBuilder(256);
+                    record.out = null;
+                    free.add(record);
+                }
+                batch.clear();
+                if (text.capacity() > MAX_RECORD_CAPACITY * 4) text = new StringBuilder();
+                synchronized (this) {
+                    written += count;
+                    notifyAll();
+                }
+            }
+        }
+
+        private void print(PrintStream out, StringBuilder text) {
+            if (out == null || text.length() == 0) return;
+            out.print(text);
+            out.flush();
+            text.setLength(0);
+        }
+
+        private boolean flush(long timeout) {
+            long target = queued.get();
+            long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Math.max(0, timeout));
+            synchronized (this) {
+                try {
+                    while (written < target) {
+                        long wait = 100;
+                        if (timeout >= 0) {
+                            long left = TimeUnit.NANOSECONDS.toMillis(end - System.nanoTime());
+                            if (left <= 0) return false;
+                            wait = Math.min(wait, left);
+                        }
+                        wait(wait);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return written >= target;
+                }
+            }
+            return true;
+        }
+    }
 }
@@ -15,19 +15,48 @@
  */
 package org.summerclouds.common.internal;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.security.DigestInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Base64;
 
 public class TCrypt {
 
+    private static final int BUFFER_SIZE = 64 * 1024;
+
     public static String md5(InputStream is) throws NoSuchAlgorithmException, IOException {
         MessageDigest md = MessageDigest.getInstance("MD5");
-        DigestInputStream dis = new DigestInputStream(is, md);
-        while (dis.read() >= 0) {}
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int len;
+        while ((len = is.read(buffer)) >= 0) md.update(buffer, 0, len);
+        byte[] digest = md.digest();
+        return Base64.getEncoder().encodeToString(digest);
+    }
+
+    /**
+     * Create the md5 of the file content, same as md5(InputStream) but reads the file with a
+     * channel.
+     *
+     * @param file
+     * @return base64 encoded md5
+     * @throws NoSuchAlgorithmException
+     * @throws IOException
+     */
+    public static String md5(File file) throws NoSuchAlgorithmException, IOException {
+        MessageDigest md = MessageDigest.getInstance("MD5");
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            while (channel.read(buffer) >= 0) {
+                buffer.flip();
+                md.update(buffer);
+                buffer.clear();
+            }
+        }
         byte[] digest = md.digest();
         return Base64.getEncoder().encodeToString(digest);
     }
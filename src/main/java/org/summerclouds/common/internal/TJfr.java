@@ -0,0 +1,53 @@
+/**
+ * Copyright (C) 2022 Mike Hummel (mh@mhus.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.summerclouds.common.internal;
+
+/**
+ * Decides if the JFR events of this library are emitted. The events are not registered and not
+ * loaded until a flight recorder is initialized, the JVM does not pay the JFR bootstrap otherwise.
+ * The jdk.jfr module is optional in custom runtime images.
+ */
+public final class TJfr {
+
+    private static final boolean AVAILABLE = isModuleAvailable();
+    // a flight recorder is never uninitialized again
+    private static volatile boolean recording = false;
+
+    private TJfr() {}
+
+    /**
+     * Check if a flight recorder is initialized, by -XX:StartFlightRecording, JFR.start or the
+     * API. The event classes must only be used if this returns true.
+     *
+     * @return true if the events can be emitted
+     */
+    public static boolean isRecording() {
+        if (recording) return true;
+        if (!AVAILABLE) return false;
+        if (!jdk.jfr.FlightRecorder.isInitialized()) return false;
+        recording = true;
+        return true;
+    }
+
+    private static boolean isModuleAvailable() {
+        try {
+            Class.forName("jdk.jfr.FlightRecorder", false, TJfr.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+}
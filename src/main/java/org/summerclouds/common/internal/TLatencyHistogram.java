@@ -0,0 +1,170 @@
+/**
+ * Copyright (C) 2022 Mike Hummel (mh@mhus.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.summerclouds.common.internal;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of latencies, e.g. nano seconds, with fixed memory over the full positive long range.
+ * Values below 2^subBucketBits are counted exactly, above the buckets are log-linear: every power
+ * of two is divided into 2^subBucketBits buckets, the relative error is below 2^-subBucketBits
+ * (0.8% with the default of 7 bits, using 57 * 128 counters).
+ *
+ * <p>Recording is constant time and thread safe, histograms of different threads can be merged
+ * with add(). Percentiles return the upper bound of the bucket.
+ */
+public class TLatencyHistogram {
+
+    private final int subBucketBits;
+    private final int subBucketCount;
+    private final AtomicLongArray counts;
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicLong max = new AtomicLong();
+
+    public TLatencyHistogram() {
+        this(7);
+    }
+
+    /**
+     * Create a histogram with the given precision.
+     *
+     * @param subBucketBits Precision in bits, 1 - 20
+     */
+    public TLatencyHistogram(int subBucketBits) {
+        if (subBucketBits < 1 || subBucketBits > 20)
+            throw new IllegalArgumentException("subBucketBits must be between 1 and 20");
+        this.subBucketBits = subBucketBits;
+        subBucketCount = 1 << subBucketBits;
+        counts = new AtomicLongArray(subBucketCount * (64 - subBucketBits));
+    }
+
+    /**
+     * Record a value, negative values are recorded as 0.
+     *
+     * @param value The latency
+     */
+    public void record(long value) {
+        if (value < 0) value = 0;
+        counts.incrementAndGet(getIndex(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+        long m = min.get();
+        while (value < m && !min.compareAndSet(m, value)) m = min.get();
+        m = max.get();
+        while (value > m && !max.compareAndSet(m, value)) m = max.get();
+    }
+
+    /**
+     * Add all values of the other histogram, it must have the same precision.
+     *
+     * @param other The histogram to merge
+     */
+    public void add(TLatencyHistogram other) {
+        if (other.subBucketBits != subBucketBits)
+            throw new IllegalArgumentException("histograms with different precision");
+        for (int i = 0; i < counts.length(); i++) {
+            long c = other.counts.get(i);
+            if (c != 0) counts.addAndGet(i, c);
+        }
+        count.addAndGet(other.count.get());
+        sum.addAndGet(other.sum.get());
+        long m = min.get();
+        long o = other.min.get();
+        while (o < m && !min.compareAndSet(m, o)) m = min.get();
+        m = max.get();
+        o = other.max.get();
+        while (o > m && !max.compareAndSet(m, o)) m = max.get();
+    }
+
+    /**
+     * Return the value not exceeded by the given percent of the recorded values.
+     *
+     * @param percent 0 - 100
+     * @return the upper bound of the bucket or 0 if empty
+     */
+    public long getPercentile(double percent) {
+        long total = count.get();
+        if (total == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(Math.min(100, percent) / 100d * total));
+        long seen = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            seen += counts.get(i);
+            if (seen >= rank) return Math.min(getUpperBound(i), getMax());
+        }
+        return getMax();
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getMin() {
+        return count.get() == 0 ? 0 : min.get();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    public double getMean() {
+        long c = count.get();
+        return c == 0 ? 0 : (double) sum.get() / c;
+    }
+
+    /** Remove all values, not atomic if values are recorded at the same time. */
+    public void reset() {
+        for (int i = 0; i < counts.length(); i++) counts.set(i, 0);
+        count.set(0);
+        sum.set(0);
+        min.set(Long.MAX_VALUE);
+        max.set(0);
+    }
+
+    private int getIndex(long value) {
+        if (value < subBucketCount) return (int) value;
+        int shift = 63 - Long.numberOfLeadingZeros(value) - subBucketBits;
+        // value >> shift is in [subBucketCount, 2 * subBucketCount)
+        return (shift + 1) * subBucketCount + (int) ((value >> shift) - subBucketCount);
+    }
+
+    private long getUpperBound(int index) {
+        if (index < subBucketCount) return index;
+        int shift = (index >> subBucketBits) - 1;
+        long lower = ((long) subBucketCount + (index & (subBucketCount - 1))) << shift;
+        return lower + (1L << shift) - 1;
+    }
+
+    @Override
+    public String toString() {
+        return "count="
+                + getCount()
+                + " min="
+                + getMin()
+                + " median="
+                + getPercentile(50)
+                + " p90="
+                + getPercentile(90)
+                + " p99="
+                + getPercentile(99)
+                + " p999="
+                + getPercentile(99.9)
+                + " max="
+                + getMax();
+    }
+}
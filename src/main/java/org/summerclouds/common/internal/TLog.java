@@ -93,6 +93,8 @@ public class TLog {
         prepare(sb);
         Throwable error = TString.serialize(sb, msg, 0);
 
+        if (TJfr.isRecording()) TLogEvent.log(level.name(), name, sb);
+
         switch (level) {
             case DEBUG:
                 engine.debug(sb.toString(), error);
@@ -0,0 +1,59 @@
+/**
+ * Copyright (C) 2022 Mike Hummel (mh@mhus.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.summerclouds.common.internal;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Registered;
+
+/**
+ * JFR event for a message logged by TLog. Only loaded if TJfr.isRecording() to not link jdk.jfr
+ * into TLog.
+ */
+@Name("org.summerclouds.common.Log")
+@Label("Log")
+@Category("Summerclouds")
+@Description("Message logged by TLog")
+@Registered(false)
+class TLogEvent extends Event {
+
+    static {
+        // registered on first use, TJfr allows it only while a flight recorder is initialized
+        FlightRecorder.register(TLogEvent.class);
+    }
+
+    @Label("Level")
+    String level;
+
+    @Label("Logger")
+    String logger;
+
+    @Label("Message")
+    String message;
+
+    static void log(String level, String logger, CharSequence message) {
+        TLogEvent event = new TLogEvent();
+        if (!event.isEnabled()) return;
+        event.level = level;
+        event.logger = logger;
+        event.message = message.toString();
+        event.commit();
+    }
+}
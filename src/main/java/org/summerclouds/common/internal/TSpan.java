@@ -0,0 +1,258 @@
+/**
+ * Copyright (C) 2022 Mike Hummel (mh@mhus.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.summerclouds.common.internal;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.lang.ref.WeakReference;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Nested timing spans per thread. The spans of a thread build a call tree, the time of each span
+ * without its children is summed up by the path of span names. The result is exported in the
+ * collapsed stack format ("a;b;c 1234" with nano seconds) which can be rendered by flame graph
+ * tools.
+ *
+ * <p>Usage:
+ *
+ * <pre>
+ * try (TCloseable s = TSpan.span("parse")) {
+ *     ...
+ * }
+ * </pre>
+ *
+ * The frames are pooled per thread and depth, a span does not allocate after the first use of the
+ * same path. Therefore close the returned object exactly once and in the same thread. Spans can be
+ * switched off by the property org.summerclouds.common.internal.TSpan_enabled=false or
+ * setEnabled(false).
+ *
+ * <p>The trees of terminated threads are merged by thread name and released, thread per task
+ * executors do not keep a tree per task.
+ */
+public class TSpan {
+
+    private static final TCloseable NOOP = () -> {};
+    private static final int SWEEP_INTERVAL = 64;
+    private static final Set<Tree> trees = ConcurrentHashMap.newKeySet();
+    private static final Map<String, Node> retired = new HashMap<>();
+    private static final AtomicInteger created = new AtomicInteger();
+    private static final ThreadLocal<Tree> tree =
+            ThreadLocal.withInitial(
+                    () -> {
+                        Tree t = new Tree(Thread.currentThread());
+                        trees.add(t);
+                        if (created.incrementAndGet() % SWEEP_INTERVAL == 0) sweep();
+                        return t;
+                    });
+    private static volatile boolean enabled =
+            TCast.toboolean(TSystem.getProperty(TSpan.class, "enabled", "true"), true);
+
+    /**
+     * Start a span, close it to stop.
+     *
+     * @param name Name of the span, should not contain ';' or spaces
+     * @return Close to end the span
+     */
+    public static TCloseable span(String name) {
+        if (!enabled) return NOOP;
+        return tree.get().push(name);
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void setEnabled(boolean enabled) {
+        TSpan.enabled = enabled;
+    }
+
+    /**
+     * Return the summed up times of the spans of all threads by path.
+     *
+     * @param perThread Use the thread name as first frame
+     * @return path to self time in nano seconds
+     */
+    public static synchronized Map<String, Long> getCollapsed(boolean perThread) {
+        sweep();
+        Map<String, Long> out = new TreeMap<>();
+        for (Tree t : trees) collect(t.root, t.threadName, perThread, out);
+        for (Map.Entry<String, Node> entry : retired.entrySet())
+            collect(entry.getValue(), entry.getKey(), perThread, out);
+        return out;
+    }
+
+    private static void collect(
+            Node root, String threadName, boolean perThread, Map<String, Long> out) {
+        for (Node child : root.children.values())
+            collect(child, perThread ? threadName + ";" : "", out);
+    }
+
+    private static void collect(Node node, String prefix, Map<String, Long> out) {
+        String path = prefix + node.name;
+        long self = node.selfNanos;
+        if (self > 0) out.merge(path, self, Long::sum);
+        for (Node child : node.children.values()) collect(child, path + ";", out);
+    }
+
+    /**
+     * Return the collapsed stacks, one line per path.
+     *
+     * @param perThread Use the thread name as first frame
+     * @return The lines
+     */
+    public static String toCollapsed(boolean perThread) {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, Long> entry : getCollapsed(perThread).entrySet())
+            sb.append(entry.getKey()).append(' ').append(entry.getValue()).append('\n');
+        return sb.toString();
+    }
+
+    /**
+     * Write the collapsed stacks of all threads into the file.
+     *
+     * @param file Target file
+     * @param perThread Use the thread name as first frame
+     * @throws IOException
+     */
+    public static void writeCollapsed(File file, boolean perThread) throws IOException {
+        try (PrintWriter out =
+                new PrintWriter(
+                        new OutputStreamWriter(
+                                new FileOutputStream(file), StandardCharsets.UTF_8))) {
+            out.print(toCollapsed(perThread));
+        }
+    }
+
+    /** Reset the times of all threads, should be called if no spans are open. */
+    public static synchronized void reset() {
+        retired.clear();
+        for (Tree t : trees) reset(t.root);
+    }
+
+    private static void reset(Node node) {
+        node.selfNanos = 0;
+        for (Node child : node.children.values()) reset(child);
+    }
+
+    private static synchronized void sweep() {
+        for (Iterator<Tree> iter = trees.iterator(); iter.hasNext(); ) {
+            Tree t = iter.next();
+            Thread thread = t.thread.get();
+            if (thread != null && thread.isAlive()) continue;
+            // not written any more
+            iter.remove();
+            merge(t.root, retired.computeIfAbsent(t.threadName, n -> new Node("")));
+        }
+    }
+
+    private static void merge(Node from, Node to) {
+        to.selfNanos += from.selfNanos;
+        for (Node child : from.children.values())
+            merge(child, to.children.computeIfAbsent(child.name, Node::new));
+    }
+
+    private static class Node {
+        private final String name;
+        private final Map<String, Node> children = new ConcurrentHashMap<>();
+        // written by the owning thread only
+        private volatile long selfNanos;
+
+        private Node(String name) {
+            this.name = name;
+        }
+    }
+
+    private static class Tree {
+        private final WeakReference<Thread> thread;
+        private final String threadName;
+        private final Node root = new Node("");
+        private Frame[] frames = new Frame[16];
+        private int depth;
+
+        private Tree(Thread thread) {
+            this.thread = new WeakReference<>(thread);
+            threadName = thread.getName();
+        }
+
+        private Frame push(String name) {
+            Node parent = depth == 0 ? root : frames[depth - 1].node;
+            Node node = parent.children.get(name);
+            if (node == null) node = parent.children.computeIfAbsent(name, Node::new);
+            if (depth == frames.length) {
+                Frame[] f = new Frame[frames.length * 2];
+                System.arraycopy(frames, 0, f, 0, frames.length);
+                frames = f;
+            }
+            Frame frame = frames[depth];
+            if (frame == null) {
+                frame = new Frame(this, depth);
+                frames[depth] = frame;
+            }
+            depth++;
+            frame.start(node);
+            return frame;
+        }
+
+        private void pop(Frame frame) {
+            // close inner spans not closed in order, ignore spans already closed
+            while (depth > frame.depth) {
+                Frame top = frames[--depth];
+                long nanos = top.stop();
+                if (depth > 0) frames[depth - 1].childNanos += nanos;
+            }
+        }
+    }
+
+    private static class Frame implements TCloseable {
+        private final Tree tree;
+        private final int depth;
+        private final TStopWatch watch = new TStopWatch("span", true, 0);
+        private Node node;
+        private long childNanos;
+
+        private Frame(Tree tree, int depth) {
+            this.tree = tree;
+            this.depth = depth;
+        }
+
+        private void start(Node node) {
+            this.node = node;
+            childNanos = 0;
+            watch.reset().start();
+        }
+
+        private long stop() {
+            long nanos = watch.stop().getCurrentNanos();
+            node.selfNanos += nanos - childNanos;
+            return nanos;
+        }
+
+        @Override
+        public void close() {
+            tree.pop(this);
+        }
+    }
+}
@@ -1,192 +1,372 @@
-/**
- * Copyright (C) 2022 Mike Hummel (mh@mhus.de)
- *
- * Licensed under the Apache License, Version 2.0 (the "License");
- * you may not use this file except in compliance with the License.
- * You may obtain a copy of the License at
- *
- *         http://www.apache.org/licenses/LICENSE-2.0
- *
- * Unless required by applicable law or agreed to in writing, software
- * distributed under the License is distributed on an "AS IS" BASIS,
- * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
- * See the License for the specific language governing permissions and
- * limitations under the License.
- */
-package org.summerclouds.common.internal;
-
-import java.io.PrintStream;
-
-public class TStopWatch {
-
-    private static final long MONTH_AVERAGE_MILLISECONDS = 2629746000l; // for 10.000 years
-    private static final long YEAR_AVERAGE_MILLISECONDS =
-            MONTH_AVERAGE_MILLISECONDS * 12; // for 10.000 years
-
-    private static final int STATUS_INITIAL = 0;
-    private static final int STATUS_RUNNING = 1;
-    private static final int STATUS_STOPPED = 2;
-
-    private long count = 0;
-    private long start = 0;
-    private long stop = 0;
-
-    private String name;
-
-    public TStopWatch() {
-        name = "StopWatch";
-    }
-
-    public TStopWatch(String name) {
-        this.name = name;
-    }
-
-    public TStopWatch start() {
-        synchronized (this) {
-            if (start != 0 && stop != 0) {
-                start = System.currentTimeMillis() - (stop - start);
-                stop = 0;
-                count++;
-            } else if (start == 0) {
-                start = System.currentTimeMillis();
-                count++;
-            }
-        }
-        return this;
-    }
-
-    public TStopWatch stop() {
-        synchronized (this) {
-            if (start != 0 && stop == 0) {
-                stop = System.currentTimeMillis();
-
-                //			try {
-                //				if (MApi.instance().isPersistence()) {
-                //					IConfig persistence =
-                // MApi.instance().getPersistenceManager().sessionScope().getPersistence("de.mhus.lib");
-                //					long uid = MApi.instance().nextUniqueId();
-                //					persistence.setString(getJmxName() + "_" + name + "_" + uid,
-                // getCurrentTimeAsString());
-                //					persistence.save();
-                //				}
-                //			} catch (Exception t) {
-                //				log().t(t);
-                //			}
-
-            }
-        }
-        return this;
-    }
-
-    public long getCurrentTime() {
-        if (start == 0) return 0;
-        if (stop == 0) return System.currentTimeMillis() - start;
-        return stop - start;
-    }
-
-    public TStopWatch reset() {
-        synchronized (this) {
-            start = 0;
-            stop = 0;
-        }
-        return this;
-    }
-
-    public int getStatus() {
-        if (start == 0 && stop == 0) return STATUS_INITIAL;
-        if (stop == 0) return STATUS_RUNNING;
-        return STATUS_STOPPED;
-    }
-
-    public boolean isRunning() {
-        return getStatus() == STATUS_RUNNING;
-    }
-
-    public String getStatusAsString() {
-        switch (getStatus()) {
-            case STATUS_INITIAL:
-                return "initial";
-            case STATUS_RUNNING:
-                return "running";
-            case STATUS_STOPPED:
-                return "stopped";
-            default:
-                return "unknown";
-        }
-    }
-
-    public long getCurrentSeconds() {
-        return getCurrentTime() / 1000;
-    }
-
-    public long getCurrentMinutes() {
-        return getCurrentSeconds() / 60;
-    }
-
-    public String getCurrentMinutesAsString() {
-        long sec = getCurrentSeconds();
-        return String.valueOf(sec / 60) + ':' + TCast.toString((int) (sec % 60), 2);
-    }
-
-    public String getCurrentTimeAsString() {
-        return getIntervalAsString(getCurrentTime());
-    }
-
-    public String getName() {
-        return name;
-    }
-
-    @Override
-    public String toString() {
-        return name + "=" + getCurrentTimeAsString();
-    }
-
-    public long getCount() {
-        return count;
-    }
-
-    public long getStart() {
-        return start;
-    }
-
-    public long getStop() {
-        return stop;
-    }
-
-    public void print() {
-        print(System.out);
-    }
-
-    public void print(PrintStream out) {
-        out.println(toString());
-    }
-
-    private static String getIntervalAsString(long msec) {
-
-        boolean negative = false;
-        if (msec < 0) {
-            negative = true;
-            msec = -msec;
-        }
-
-        long sec = msec / 1000;
-        long min = sec / 60;
-        long hours = min / 60;
-        long days = hours / 24;
-        long months = (msec / MONTH_AVERAGE_MILLISECONDS) % 12;
-        long years = msec / YEAR_AVERAGE_MILLISECONDS;
-
-        return (negative ? "-" : "")
-                + (years > 0 ? TCast.toString(years) + "y " : "")
-                + (years > 0 || months > 0 ? TCast.toString(months) + "m " : "")
-                + TCast.toString((int) (days % 365), 2)
-                + ' '
-                + TCast.toString((int) (hours % 24), 2)
-                + ':'
-                + TCast.toString((int) (min % 60), 2)
-                + ':'
-                + TCast.toString((int) (sec % 60), 2)
-                + '.'
-                + TCast.toString((int) (msec % 1000), 3);
-    }
-}
+/**
+ * Copyright (C) 2022 Mike Hummel (mh@mhus.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.summerclouds.common.internal;
+
+import java.io.PrintStream;
+
+/**
+ * Measures the running time, can be stopped and started again to accumulate the time.
+ *
+ * <p>By default the wall clock time in milliseconds is used and the methods are synchronized. In
+ * nano time mode System.nanoTime() is used, which is monotonic and has a higher resolution. The
+ * nano time mode is not synchronized, use the stop watch in one thread only. lap() and split()
+ * record intermediate times into a preallocated array without allocating.
+ */
+public class TStopWatch {
+
+    private static final long MONTH_AVERAGE_MILLISECONDS = 2629746000l; // for 10.000 years
+    private static final long YEAR_AVERAGE_MILLISECONDS =
+            MONTH_AVERAGE_MILLISECONDS * 12; // for 10.000 years
+
+    private static final int STATUS_INITIAL = 0;
+    private static final int STATUS_RUNNING = 1;
+    private static final int STATUS_STOPPED = 2;
+
+    private static final int DEFAULT_MARKS = 32;
+
+    private long count = 0;
+    private long start = 0;
+    private long stop = 0;
+    private int status = STATUS_INITIAL;
+    private final boolean nanoTime;
+    private final long[] marks;
+    private int markCount;
+    private long lastSplit;
+    private TStopWatchRegistry.Timing timing;
+    private long cycleStart;
+    // TStopWatchEvent, not linked if jdk.jfr is not available
+    private Object event;
+
+    private String name;
+
+    public TStopWatch() {
+        this("StopWatch");
+    }
+
+    public TStopWatch(String name) {
+        this(name, false, 0);
+    }
+
+    /**
+     * Create a stop watch.
+     *
+     * @param name Name of the stop watch
+     * @param nanoTime Use monotonic nano time, not synchronized
+     */
+    public TStopWatch(String name, boolean nanoTime) {
+        this(name, nanoTime, nanoTime ? DEFAULT_MARKS : 0);
+    }
+
+    /**
+     * Create a stop watch.
+     *
+     * @param name Name of the stop watch
+     * @param nanoTime Use monotonic nano time, not synchronized
+     * @param maxMarks Number of laps and splits recorded, further marks are not recorded
+     */
+    public TStopWatch(String name, boolean nanoTime, int maxMarks) {
+        this.name = name;
+        this.nanoTime = nanoTime;
+        marks = new long[maxMarks];
+    }
+
+    public TStopWatch start() {
+        if (nanoTime) {
+            doStart();
+            return this;
+        }
+        synchronized (this) {
+            doStart();
+        }
+        return this;
+    }
+
+    private void doStart() {
+        if (status == STATUS_INITIAL || status == STATUS_STOPPED) {
+            // the event is created before the clock is read, it is not part of the interval
+            if (TJfr.isRecording()) event = TStopWatchEvent.start(name);
+            long now = now();
+            start = status == STATUS_STOPPED ? now - (stop - start) : now;
+            stop = 0;
+            status = STATUS_RUNNING;
+            count++;
+            cycleStart = now;
+        }
+    }
+
+    public TStopWatch stop() {
+        if (nanoTime) {
+            doStop();
+            return this;
+        }
+        synchronized (this) {
+            doStop();
+        }
+        return this;
+    }
+
+    private void doStop() {
+        if (status == STATUS_RUNNING) {
+            stop = now();
+            status = STATUS_STOPPED;
+            if (timing != null) timing.add(toNanos(stop - cycleStart));
+            if (event != null) {
+                TStopWatchEvent.stop(event);
+                event = null;
+            }
+        }
+    }
+
+    /**
+     * Add the time of every start/stop cycle to the timing, see TStopWatchRegistry.
+     *
+     * @param timing The timing or null
+     * @return this
+     */
+    public TStopWatch setTiming(TStopWatchRegistry.Timing timing) {
+        this.timing = timing;
+        return this;
+    }
+
+    /**
+     * Record the time since the last lap or split, or since the start for the first one.
+     *
+     * @return The lap time in nano seconds
+     */
+    public long lap() {
+        long split = getElapsed();
+        long lap = split - lastSplit;
+        mark(split);
+        return toNanos(lap);
+    }
+
+    /**
+     * Record the running time since the start.
+     *
+     * @return The split time in nano seconds
+     */
+    public long split() {
+        long split = getElapsed();
+        mark(split);
+        return toNanos(split);
+    }
+
+    private void mark(long split) {
+        lastSplit = split;
+        if (markCount < marks.length) marks[markCount++] = split;
+    }
+
+    /** @return Number of recorded laps and splits */
+    public int getMarkCount() {
+        return markCount;
+    }
+
+    /**
+     * Return the running time since the start at the recorded lap or split.
+     *
+     * @param index Index of the mark
+     * @return Time in nano seconds
+     */
+    public long getSplit(int index) {
+        if (index < 0 || index >= markCount) throw new IndexOutOfBoundsException(index);
+        return toNanos(marks[index]);
+    }
+
+    /**
+     * Return the time between the recorded lap or split and the previous one.
+     *
+     * @param index Index of the mark
+     * @return Time in nano seconds
+     */
+    public long getLap(int index) {
+        if (index < 0 || index >= markCount) throw new IndexOutOfBoundsException(index);
+        return toNanos(marks[index] - (index == 0 ? 0 : marks[index - 1]));
+    }
+
+    /** @return the running time in milliseconds */
+    public long getCurrentTime() {
+        long elapsed = getElapsed();
+        return nanoTime ? elapsed / 1000000 : elapsed;
+    }
+
+    /** @return the running time in nano seconds, with millisecond resolution if not in nano mode */
+    public long getCurrentNanos() {
+        return toNanos(getElapsed());
+    }
+
+    private long getElapsed() {
+        switch (status) {
+            case STATUS_RUNNING:
+                return now() - start;
+            case STATUS_STOPPED:
+                return stop - start;
+            default:
+                return 0;
+        }
+    }
+
+    private long now() {
+        return nanoTime ? System.nanoTime() : System.currentTimeMillis();
+    }
+
+    private long toNanos(long time) {
+        return nanoTime ? time : time * 1000000;
+    }
+
+    public boolean isNanoTime() {
+        return nanoTime;
+    }
+
+    public TStopWatch reset() {
+        if (nanoTime) {
+            doReset();
+            return this;
+        }
+        synchronized (this) {
+            doReset();
+        }
+        return this;
+    }
+
+    private void doReset() {
+        start = 0;
+        stop = 0;
+        status = STATUS_INITIAL;
+        markCount = 0;
+        lastSplit = 0;
+        event = null;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public boolean isRunning() {
+        return getStatus() == STATUS_RUNNING;
+    }
+
+    public String getStatusAsString() {
+        switch (getStatus()) {
+            case STATUS_INITIAL:
+                return "initial";
+            case STATUS_RUNNING:
+                return "running";
+            case STATUS_STOPPED:
+                return "stopped";
+            default:
+                return "unknown";
+        }
+    }
+
+    public long getCurrentSeconds() {
+        return getCurrentTime() / 1000;
+    }
+
+    public long getCurrentMinutes() {
+        return getCurrentSeconds() / 60;
+    }
+
+    public String getCurrentMinutesAsString() {
+        long sec = getCurrentSeconds();
+        return String.valueOf(sec / 60) + ':' + TCast.toString((int) (sec % 60), 2);
+    }
+
+    /**
+     * Return the running time formatted like "00 00:00:00.000", in nano time mode with the sub
+     * millisecond digits appended, see getNanoIntervalAsString().
+     *
+     * @return The formatted running time
+     */
+    public String getCurrentTimeAsString() {
+        if (nanoTime) return getNanoIntervalAsString(getCurrentNanos());
+        return getIntervalAsString(getCurrentTime());
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String toString() {
+        return name + "=" + getCurrentTimeAsString();
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    /** @return the start in milliseconds or the nano time in nano time mode */
+    public long getStart() {
+        return start;
+    }
+
+    /** @return the stop in milliseconds or the nano time in nano time mode */
+    public long getStop() {
+        return stop;
+    }
+
+    public void print() {
+        print(System.out);
+    }
+
+    public void print(PrintStream out) {
+        out.println(toString());
+    }
+
+    /**
+     * Format like getIntervalAsString() with the sub millisecond digits appended, e.g. "00
+     * 00:00:00.000123456".
+     *
+     * @param nanos Interval in nano seconds
+     * @return The formatted interval
+     */
+    public static String getNanoIntervalAsString(long nanos) {
+        boolean negative = nanos < 0;
+        if (negative) nanos = -nanos;
+        return (negative ? "-" : "")
+                + getIntervalAsString(nanos / 1000000)
+                + TCast.toString((int) (nanos % 1000000), 6);
+    }
+
+    public static String getIntervalAsString(long msec) {
+
+        boolean negative = false;
+        if (msec < 0) {
+            negative = true;
+            msec = -msec;
+        }
+
+        long sec = msec / 1000;
+        long min = sec / 60;
+        long hours = min / 60;
+        long days = hours / 24;
+        long months = (msec / MONTH_AVERAGE_MILLISECONDS) % 12;
+        long years = msec / YEAR_AVERAGE_MILLISECONDS;
+
+        return (negative ? "-" : "")
+                + (years > 0 ? TCast.toString(years) + "y " : "")
+                + (years > 0 || months > 0 ? TCast.toString(months) + "m " : "")
+                + TCast.toString((int) (days % 365), 2)
+                + ' '
+                + TCast.toString((int) (hours % 24), 2)
+                + ':'
+                + TCast.toString((int) (min % 60), 2)
+                + ':'
+                + TCast.toString((int) (sec % 60), 2)
+                + '.'
+                + TCast.toString((int) (msec % 1000), 3);
+    }
+}
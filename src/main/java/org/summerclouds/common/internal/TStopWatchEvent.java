@@ -0,0 +1,65 @@
+/**
+ * Copyright (C) 2022 Mike Hummel (mh@mhus.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.summerclouds.common.internal;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Registered;
+
+/**
+ * JFR event for a start/stop cycle of a TStopWatch. Only loaded if TJfr.isRecording(), the events
+ * are passed as Object to not link jdk.jfr into TStopWatch.
+ */
+@Name("org.summerclouds.common.StopWatch")
+@Label("Stop Watch")
+@Category("Summerclouds")
+@Description("Interval between start and stop of a TStopWatch")
+@Registered(false)
+class TStopWatchEvent extends Event {
+
+    static {
+        // registered on first use, TJfr allows it only while a flight recorder is initialized
+        FlightRecorder.register(TStopWatchEvent.class);
+    }
+
+    @Label("Name")
+    String name;
+
+    /**
+     * Begin an event.
+     *
+     * @param name Name of the stop watch
+     * @return The event or null if not enabled
+     */
+    static Object start(String name) {
+        // not escaping if no recording is active, the allocation is removed by the JIT
+        TStopWatchEvent e = new TStopWatchEvent();
+        if (!e.isEnabled()) return null;
+        e.name = name;
+        e.begin();
+        return e;
+    }
+
+    static void stop(Object event) {
+        TStopWatchEvent e = (TStopWatchEvent) event;
+        e.end();
+        if (e.shouldCommit()) e.commit();
+    }
+}
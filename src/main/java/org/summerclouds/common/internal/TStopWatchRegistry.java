@@ -0,0 +1,254 @@
+/**
+ * Copyright (C) 2022 Mike Hummel (mh@mhus.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.summerclouds.common.internal;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Accumulates the times of stop watches by name. The times are summed up in striped counters, many
+ * threads can time the same operation without contention. Every name is registered as
+ * TStopWatchMXBean with the object name org.summerclouds.common:type=TStopWatch,name=..., switch
+ * it off with the property org.summerclouds.common.internal.TStopWatchRegistry_jmx=false.
+ *
+ * <p>Usage:
+ *
+ * <pre>
+ * TStopWatch watch = TStopWatchRegistry.start("load");
+ * ...
+ * watch.stop();
+ * </pre>
+ */
+public class TStopWatchRegistry {
+
+    private static final String DOMAIN = "org.summerclouds.common";
+    private static final Map<String, Timing> timings = new ConcurrentHashMap<>();
+
+    /**
+     * Create and start a nano time stop watch adding its time to the named timing on every stop.
+     *
+     * @param name Name of the timing
+     * @return The started stop watch
+     */
+    public static TStopWatch start(String name) {
+        return new TStopWatch(name, true, 0).setTiming(get(name)).start();
+    }
+
+    /**
+     * Add a measured time to the named timing.
+     *
+     * @param name Name of the timing
+     * @param nanos Time in nano seconds
+     */
+    public static void add(String name, long nanos) {
+        get(name).add(nanos);
+    }
+
+    /**
+     * Return the timing, it is created and registered at JMX if not exists.
+     *
+     * @param name Name of the timing
+     * @return The timing
+     */
+    public static Timing get(String name) {
+        Timing timing = timings.get(name);
+        if (timing != null) return timing;
+        return timings.computeIfAbsent(
+                name,
+                n -> {
+                    Timing t = new Timing(n);
+                    register(t);
+                    return t;
+                });
+    }
+
+    /**
+     * Return a copy of the current values sorted by name.
+     *
+     * @return name to values
+     */
+    public static Map<String, Snapshot> snapshot() {
+        Map<String, Snapshot> out = new TreeMap<>();
+        for (Timing timing : timings.values()) out.put(timing.getName(), timing.snapshot());
+        return out;
+    }
+
+    /** Reset the values of all timings. */
+    public static void reset() {
+        for (Timing timing : timings.values()) timing.reset();
+    }
+
+    /** Remove all timings and unregister them from JMX. */
+    public static void clear() {
+        for (Timing timing : timings.values()) {
+            timings.remove(timing.getName());
+            unregister(timing);
+        }
+    }
+
+    private static void register(Timing timing) {
+        if (!TCast.toboolean(TSystem.getProperty(TStopWatchRegistry.class, "jmx", "true"), true))
+            return;
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = getObjectName(timing);
+            if (!server.isRegistered(name)) server.registerMBean(timing, name);
+        } catch (JMException e) {
+            // not critical, the values are still available by snapshot()
+        }
+    }
+
+    private static void unregister(Timing timing) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = getObjectName(timing);
+            if (server.isRegistered(name)) server.unregisterMBean(name);
+        } catch (JMException e) {
+            // ignore
+        }
+    }
+
+    private static ObjectName getObjectName(Timing timing) throws JMException {
+        return new ObjectName(
+                DOMAIN + ":type=TStopWatch,name=" + ObjectName.quote(timing.getName()));
+    }
+
+    /** Accumulated times of one name. */
+    public static class Timing implements TStopWatchMXBean {
+
+        private final String name;
+        private final LongAdder count = new LongAdder();
+        private final LongAdder total = new LongAdder();
+        private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+        private Timing(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Add a measured time.
+         *
+         * @param nanos Time in nano seconds
+         */
+        public void add(long nanos) {
+            count.increment();
+            total.add(nanos);
+            max.accumulate(nanos);
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public long getCount() {
+            return count.sum();
+        }
+
+        @Override
+        public long getTotalNanos() {
+            return total.sum();
+        }
+
+        @Override
+        public long getMaxNanos() {
+            return max.get();
+        }
+
+        @Override
+        public double getMeanNanos() {
+            long c = count.sum();
+            return c == 0 ? 0 : (double) total.sum() / c;
+        }
+
+        @Override
+        public String getTotalTimeAsString() {
+            return TStopWatch.getNanoIntervalAsString(total.sum());
+        }
+
+        @Override
+        public void reset() {
+            count.reset();
+            total.reset();
+            max.reset();
+        }
+
+        public Snapshot snapshot() {
+            return new Snapshot(name, count.sum(), total.sum(), max.get());
+        }
+
+        @Override
+        public String toString() {
+            return snapshot().toString();
+        }
+    }
+
+    /** Values of a timing at one point in time. */
+    public static class Snapshot {
+
+        private final String name;
+        private final long count;
+        private final long totalNanos;
+        private final long maxNanos;
+
+        public Snapshot(String name, long count, long totalNanos, long maxNanos) {
+            this.name = name;
+            this.count = count;
+            this.totalNanos = totalNanos;
+            this.maxNanos = maxNanos;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getTotalNanos() {
+            return totalNanos;
+        }
+
+        public long getMaxNanos() {
+            return maxNanos;
+        }
+
+        public double getMeanNanos() {
+            return count == 0 ? 0 : (double) totalNanos / count;
+        }
+
+        @Override
+        public String toString() {
+            return name
+                    + "="
+                    + TStopWatch.getNanoIntervalAsString(totalNanos)
+                    + " count="
+                    + count
+                    + " max="
+                    + TStopWatch.getNanoIntervalAsString(maxNanos);
+        }
+    }
+}
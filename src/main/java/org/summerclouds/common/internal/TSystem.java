@@ -34,6 +34,7 @@ import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -51,6 +52,9 @@ public class TSystem {
         SOLARIS
     }
 
+    // before log, the log factory reads its configuration by getProperty()
+    private static final InheritableThreadLocal<EnvironmentOverlay> environment =
+            new InheritableThreadLocal<>();
     private static TLog log = TLog.getLog(TSystem.class);
     private static ThreadMXBean tmxb = ManagementFactory.getThreadMXBean();
     private static String hostname; // cached hostname
@@ -351,6 +355,20 @@ public class TSystem {
         return r.maxMemory() - r.totalMemory() + r.freeMemory();
     }
 
+    /**
+     * Return the bytes allocated on the heap by the current thread since it was started. Only
+     * supported by JVMs providing com.sun.management.ThreadMXBean.
+     *
+     * @return allocated bytes or -1 if not supported
+     */
+    public static long getThreadAllocatedBytes() {
+        if (!(tmxb instanceof com.sun.management.ThreadMXBean)) return -1;
+        com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) tmxb;
+        if (!bean.isThreadAllocatedMemorySupported() || !bean.isThreadAllocatedMemoryEnabled())
+            return -1;
+        return bean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
     /**
      * Get the field in this or any superclass.
      *
@@ -445,6 +463,23 @@ public class TSystem {
         return threads;
     }
 
+    /**
+     * Return all live threads with stack trace and consumed cpu time like threadTop() but without
+     * measuring an interval. Use getCpuTotal() to get the cpu time of the thread.
+     *
+     * @return List of threads
+     */
+    public static List<TopThreadInfo> threadInfo() {
+        LinkedList<TopThreadInfo> threads = new LinkedList<>();
+        for (Entry<Thread, StackTraceElement[]> thread : Thread.getAllStackTraces().entrySet()) {
+            TopThreadInfo info = new TopThreadInfo(tmxb, thread);
+            info.start();
+            info.stop();
+            threads.add(info);
+        }
+        return threads;
+    }
+
     public static class TopThreadInfo {
 
         private Thread thread;
@@ -589,6 +624,62 @@ public class TSystem {
         else return System.setProperty(name, value);
     }
 
+    /**
+     * Like System.getenv() but respects the environment overlay of the current thread.
+     *
+     * @param name Name of the variable
+     * @return The value or null if not set
+     */
+    public static String getenv(String name) {
+        EnvironmentOverlay overlay = getEnvironmentOverlay();
+        if (overlay != null && overlay.values.containsKey(name)) return overlay.values.get(name);
+        return System.getenv(name);
+    }
+
+    /**
+     * Overlay environment variables for the current thread and the threads started by it until
+     * the returned object is closed. The values are visible to getenv() and getProperty() but not
+     * to System.getenv(). A null value hides the variable. Only the overlay is copied, not the
+     * whole environment. After closing, the overlay is also ignored by the threads started while
+     * it was active, e.g. the threads of a pool created by the test.
+     *
+     * @param values The variables to overwrite
+     * @return Close to restore the previous overlay
+     */
+    public static TCloseable overlayEnvironment(Map<String, String> values) {
+        EnvironmentOverlay overlay = new EnvironmentOverlay(getEnvironmentOverlay(), values);
+        environment.set(overlay);
+        return overlay;
+    }
+
+    private static EnvironmentOverlay getEnvironmentOverlay() {
+        EnvironmentOverlay current = environment.get();
+        EnvironmentOverlay overlay = current;
+        while (overlay != null && overlay.closed) overlay = overlay.previous;
+        if (overlay != current) environment.set(overlay);
+        return overlay;
+    }
+
+    /** Overlay shared with the inheriting threads, they check if it was closed. */
+    private static class EnvironmentOverlay implements TCloseable {
+
+        private final EnvironmentOverlay previous;
+        private final Map<String, String> values;
+        private volatile boolean closed;
+
+        private EnvironmentOverlay(EnvironmentOverlay previous, Map<String, String> values) {
+            this.previous = previous;
+            this.values = previous == null ? new HashMap<>(values) : new HashMap<>(previous.values);
+            if (previous != null) this.values.putAll(values);
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+            if (environment.get() == this) environment.set(previous);
+        }
+    }
+
     /**
      * Load from System.getProperty() or the fallback from Sytsem.getenv and with prefix from owner.
      * Key is ownerClass + _ + key
@@ -601,7 +692,7 @@ public class TSystem {
         String name = getOwnerName(owner) + "_" + key;
         String ret = System.getProperty(getOwnerName(owner) + "_" + key);
         if (ret != null) return ret;
-        ret = System.getenv(name);
+        ret = getenv(name);
         return ret;
     }
 
@@ -621,7 +712,7 @@ public class TSystem {
                         + key;
         String ret = System.getProperty(getOwnerName(owner) + "_" + key);
         if (ret != null) return ret;
-        ret = System.getenv(name);
+        ret = getenv(name);
         if (ret != null) return ret;
         return def;
     }
@@ -0,0 +1,108 @@
+/**
+ * Copyright (C) 2022 Mike Hummel (mh@mhus.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.summerclouds.common.junit;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+
+import org.summerclouds.common.internal.TStopWatch;
+
+/**
+ * Measured times of TestCase.benchmark() and PerformanceBudget, all values in nano seconds. The
+ * percentiles are exact (nearest rank of the sorted times), use TLatencyHistogram for a large or
+ * unbounded number of values.
+ */
+public class BenchmarkResult {
+
+    private final String name;
+    private final long[] sorted;
+    private final long total;
+
+    public BenchmarkResult(String name, long[] times) {
+        this.name = name;
+        sorted = times.clone();
+        Arrays.sort(sorted);
+        long sum = 0;
+        for (long t : sorted) sum += t;
+        total = sum;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getIterations() {
+        return sorted.length;
+    }
+
+    public long getMin() {
+        return sorted.length == 0 ? 0 : sorted[0];
+    }
+
+    public long getMedian() {
+        return getPercentile(50);
+    }
+
+    public long getP99() {
+        return getPercentile(99);
+    }
+
+    public long getMax() {
+        return sorted.length == 0 ? 0 : sorted[sorted.length - 1];
+    }
+
+    /**
+     * Return the smallest time not exceeded by the given percent of the iterations.
+     *
+     * @param percent 0 - 100
+     * @return time in nano seconds
+     */
+    public long getPercentile(double percent) {
+        if (sorted.length == 0) return 0;
+        int index = (int) Math.ceil(percent / 100d * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+
+    /** @return measured iterations per second */
+    public double getOpsPerSecond() {
+        return total == 0 ? 0 : sorted.length * 1e9 / total;
+    }
+
+    public void print(PrintStream out) {
+        out.println("Benchmark: " + name + " (" + sorted.length + " iterations)");
+        out.println("Min: " + TStopWatch.getNanoIntervalAsString(getMin()));
+        out.println("Median: " + TStopWatch.getNanoIntervalAsString(getMedian()));
+        out.println("P99: " + TStopWatch.getNanoIntervalAsString(getP99()));
+        out.println("Max: " + TStopWatch.getNanoIntervalAsString(getMax()));
+        out.println("Ops: " + String.format("%.1f", getOpsPerSecond()) + "/s");
+    }
+
+    @Override
+    public String toString() {
+        return name
+                + ": min="
+                + getMin()
+                + "ns median="
+                + getMedian()
+                + "ns p99="
+                + getP99()
+                + "ns max="
+                + getMax()
+                + "ns ops="
+                + String.format("%.1f", getOpsPerSecond())
+                + "/s";
+    }
+}
@@ -0,0 +1,273 @@
+/**
+ * Copyright (C) 2022 Mike Hummel (mh@mhus.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.summerclouds.common.junit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.summerclouds.common.internal.TCast;
+import org.summerclouds.common.internal.TCrypt;
+import org.summerclouds.common.internal.TString;
+
+/**
+ * Snapshot of the content of a directory tree as used by TestUtil.recordOrValidateDirectory(). The
+ * tree is walked and the files are hashed in parallel by a fork join pool, the parallelism can be
+ * set with test.snapshot.parallelism (default are two threads per processor because hashing is
+ * mostly waiting for io).
+ *
+ * <p>Hidden files (starting with a dot) are ignored. The definition contains for every file
+ * "file-&lt;path&gt;=&lt;md5&gt;" and for every directory "dirs-&lt;path&gt;" and
+ * "files-&lt;path&gt;" with the sorted and comma separated names of the entries. The path is
+ * relative to the root directory.
+ *
+ * <p>The metadata of a scan contains "file-&lt;path&gt;", "size-&lt;path&gt;" and
+ * "modified-&lt;path&gt;" for every file. It is not part of the definition because the modification
+ * times differ for every checkout, it is a local cache only. If the metadata of a previous scan is
+ * given to scan() files with unchanged size and modification time are not hashed again, the md5 of
+ * the previous scan is used instead.
+ */
+public class DirectorySnapshot {
+
+    private final File root;
+    private final Map<String, Node> nodes = new ConcurrentSkipListMap<>();
+    private final AtomicInteger hashed = new AtomicInteger();
+    private Properties metadata;
+
+    private static class Node {
+        private String md5;
+        private long size;
+        private long modified;
+        private String dirs;
+        private String files;
+    }
+
+    public DirectorySnapshot(File root) {
+        this.root = root;
+    }
+
+    public DirectorySnapshot scan() throws IOException {
+        return scan(null);
+    }
+
+    /**
+     * Scan the directory and reuse the md5 of files with unchanged size and modification time.
+     *
+     * @param metadata The metadata of a previous scan or null to hash all files
+     * @return this
+     * @throws IOException
+     */
+    public DirectorySnapshot scan(Properties metadata) throws IOException {
+        this.metadata = metadata;
+        int parallelism =
+                TCast.toint(
+                        TestUtil.getProperty("test.snapshot.parallelism", ""),
+                        Runtime.getRuntime().availableProcessors() * 2);
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, parallelism));
+        try {
+            pool.invoke(new Scan(root.toPath(), ""));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            pool.shutdown();
+        }
+        return this;
+    }
+
+    /**
+     * Return the snapshot as definition.
+     *
+     * @return The definition
+     */
+    public Properties toProperties() {
+        Properties definition = new Properties();
+        for (Entry<String, Node> entry : nodes.entrySet()) {
+            String path = entry.getKey();
+            Node node = entry.getValue();
+            if (node.md5 != null) definition.setProperty("file-" + path, node.md5);
+            if (node.dirs != null) {
+                definition.setProperty("dirs-" + path, node.dirs);
+                definition.setProperty("files-" + path, node.files);
+            }
+        }
+        return definition;
+    }
+
+    /**
+     * Return the md5, size and modification time of the files to speed up the next scan.
+     *
+     * @return The metadata
+     */
+    public Properties toMetadata() {
+        Properties metadata = new Properties();
+        for (Entry<String, Node> entry : nodes.entrySet()) {
+            String path = entry.getKey();
+            Node node = entry.getValue();
+            if (node.md5 == null) continue;
+            metadata.setProperty("file-" + path, node.md5);
+            metadata.setProperty("size-" + path, String.valueOf(node.size));
+            metadata.setProperty("modified-" + path, String.valueOf(node.modified));
+        }
+        return metadata;
+    }
+
+    /**
+     * Compare the snapshot with the definition in the order of the paths. Fails with an assertion
+     * error for the first difference.
+     *
+     * @param definition
+     */
+    public void validate(Properties definition) {
+        for (Entry<String, Node> entry : nodes.entrySet()) {
+            String path = entry.getKey();
+            Node node = entry.getValue();
+            File file = new File(root.getPath() + path);
+            if (node.md5 != null) {
+                String old = definition.getProperty("file-" + path);
+                assertEquals(
+                        old,
+                        node.md5,
+                        "File " + file.getPath() + " is changed, new MD5: " + node.md5);
+            }
+            if (node.dirs != null) {
+                String dirsOld = definition.getProperty("dirs-" + path);
+                String filesOld = definition.getProperty("files-" + path);
+                assertEquals(dirsOld, node.dirs, "Directories in " + file.getParent() + " changed");
+                assertEquals(filesOld, node.files, "Files in " + file.getParent() + " changed");
+            }
+        }
+    }
+
+    /**
+     * Check if md5, size or modification time of a file differ from the metadata.
+     *
+     * @param metadata The metadata of a previous scan or null
+     * @return true if the metadata is outdated
+     */
+    public boolean isMetadataChanged(Properties metadata) {
+        if (metadata == null) return true;
+        for (Entry<String, Node> entry : nodes.entrySet()) {
+            String path = entry.getKey();
+            Node node = entry.getValue();
+            if (node.md5 != null
+                    && (!isMetadataEqual(metadata, path, node)
+                            || !node.md5.equals(metadata.getProperty("file-" + path))))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Return the number of files hashed by the last scan.
+     *
+     * @return Number of hashed files
+     */
+    public int getHashedFiles() {
+        return hashed.get();
+    }
+
+    /**
+     * Return the number of files in the snapshot.
+     *
+     * @return Number of files
+     */
+    public int getFiles() {
+        int cnt = 0;
+        for (Node node : nodes.values()) if (node.md5 != null) cnt++;
+        return cnt;
+    }
+
+    private static boolean isMetadataEqual(Properties metadata, String path, Node node) {
+        return String.valueOf(node.size).equals(metadata.getProperty("size-" + path))
+                && String.valueOf(node.modified).equals(metadata.getProperty("modified-" + path));
+    }
+
+    private class Scan extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+        private final Path path;
+        private final String name;
+
+        private Scan(Path path, String name) {
+            this.path = path;
+            this.name = name;
+        }
+
+        @Override
+        protected void compute() {
+            try {
+                BasicFileAttributes attributes =
+                        Files.readAttributes(path, BasicFileAttributes.class);
+                if (attributes.isRegularFile()) {
+                    Node node = new Node();
+                    node.size = attributes.size();
+                    node.modified = attributes.lastModifiedTime().toMillis();
+                    if (metadata != null && isMetadataEqual(metadata, name, node))
+                        node.md5 = metadata.getProperty("file-" + name);
+                    if (node.md5 == null) {
+                        node.md5 = TCrypt.md5(path.toFile());
+                        hashed.incrementAndGet();
+                    }
+                    nodes.put(name, node);
+                }
+                if (attributes.isDirectory()) {
+                    Set<String> dirs = new TreeSet<>();
+                    Set<String> files = new TreeSet<>();
+                    List<Scan> tasks = new ArrayList<>();
+                    try (DirectoryStream<Path> stream = Files.newDirectoryStream(path)) {
+                        for (Path sub : stream) {
+                            String subName = sub.getFileName().toString();
+                            if (subName.startsWith(".")) continue;
+                            if (Files.isRegularFile(sub)) files.add(subName);
+                            else dirs.add(subName);
+                            tasks.add(new Scan(sub, name + File.separator + subName));
+                        }
+                    }
+                    Node node = new Node();
+                    node.dirs = TString.join(dirs, ",");
+                    node.files = TString.join(files, ",");
+                    nodes.put(name, node);
+                    invokeAll(tasks);
+                }
+            } catch (NoSuchFileException e) {
+                // removed while scanning or not existing root, like File.isFile() is false
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
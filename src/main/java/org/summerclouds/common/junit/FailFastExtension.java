@@ -0,0 +1,101 @@
+/**
+ * Copyright (C) 2022 Mike Hummel (mh@mhus.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.summerclouds.common.junit;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.extension.AfterTestExecutionCallback;
+import org.junit.jupiter.api.extension.BeforeTestExecutionCallback;
+import org.junit.jupiter.api.extension.ConditionEvaluationResult;
+import org.junit.jupiter.api.extension.ExecutionCondition;
+import org.junit.jupiter.api.extension.ExtensionContext;
+import org.opentest4j.TestAbortedException;
+import org.summerclouds.common.internal.TCast;
+
+/**
+ * Stops the whole test run after the first failure (test.failFast=true) or after N failures
+ * (test.failFast=N). Test classes and methods not started yet are skipped and the tests running in
+ * parallel are interrupted. Without test.failFast the extension does nothing.
+ *
+ * <p>TestCase registers the extension, for other tests enable the extension auto detection
+ * (junit.jupiter.extensions.autodetection.enabled=true) or use @ExtendWith.
+ */
+public class FailFastExtension
+        implements ExecutionCondition, BeforeTestExecutionCallback, AfterTestExecutionCallback {
+
+    private static final int threshold = initThreshold();
+    private static final AtomicInteger failures = new AtomicInteger();
+    private static final Map<Thread, String> running = new ConcurrentHashMap<>();
+    private static volatile String reason;
+
+    private static int initThreshold() {
+        String value = TestUtil.getProperty("test.failFast", "");
+        if (TCast.toboolean(value, false)) return 1;
+        return Math.max(0, TCast.toint(value, 0));
+    }
+
+    @Override
+    public ConditionEvaluationResult evaluateExecutionCondition(ExtensionContext context) {
+        String r = reason;
+        if (r == null) return ConditionEvaluationResult.enabled("fail fast not triggered");
+        return ConditionEvaluationResult.disabled(r);
+    }
+
+    @Override
+    public void beforeTestExecution(ExtensionContext context) throws Exception {
+        if (threshold == 0) return;
+        synchronized (running) {
+            if (reason != null) throw new TestAbortedException(reason);
+            running.put(Thread.currentThread(), context.getUniqueId());
+        }
+    }
+
+    @Override
+    public void afterTestExecution(ExtensionContext context) throws Exception {
+        if (threshold == 0) return;
+        synchronized (running) {
+            running.remove(Thread.currentThread());
+        }
+        if (reason != null) {
+            // failed because of the interrupt or too late, clear a pending interrupt
+            Thread.interrupted();
+            return;
+        }
+        Throwable error = context.getExecutionException().orElse(null);
+        if (error == null || error instanceof TestAbortedException) return;
+        if (failures.incrementAndGet() < threshold) return;
+
+        synchronized (running) {
+            if (reason != null) return;
+            reason = "fail fast after " + threshold + " failure(s), last " + context.getUniqueId();
+            System.out.println("*** FAIL FAST: " + reason);
+            for (Thread thread : running.keySet()) {
+                if (thread != Thread.currentThread()) thread.interrupt();
+            }
+        }
+    }
+
+    /**
+     * Return true if the test run is stopped.
+     *
+     * @return true if fail fast was triggered
+     */
+    public static boolean isTriggered() {
+        return reason != null;
+    }
+}
@@ -0,0 +1,181 @@
+/**
+ * Copyright (C) 2022 Mike Hummel (mh@mhus.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.summerclouds.common.junit;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.extension.AfterAllCallback;
+import org.junit.jupiter.api.extension.AfterTestExecutionCallback;
+import org.junit.jupiter.api.extension.BeforeAllCallback;
+import org.junit.jupiter.api.extension.BeforeTestExecutionCallback;
+import org.junit.jupiter.api.extension.ExtensionContext;
+import org.junit.jupiter.api.extension.ExtensionContext.Namespace;
+import org.summerclouds.common.internal.TString;
+
+/**
+ * Prints the garbage collections (count and time per collector) and the old generation growth and
+ * peak usage of each test and of the whole test class. Use it to find the tests causing full GCs
+ * or to decide if the forked JVM needs more heap.
+ *
+ * <p>The collectors are JVM global, if tests are running in parallel the collections are
+ * attributed to all tests running at that time.
+ *
+ * <p>Usage: @ExtendWith(GcMetricsExtension.class)
+ */
+public class GcMetricsExtension
+        implements BeforeAllCallback,
+                AfterAllCallback,
+                BeforeTestExecutionCallback,
+                AfterTestExecutionCallback {
+
+    private static final Namespace NAMESPACE = Namespace.create(GcMetricsExtension.class);
+
+    @Override
+    public void beforeAll(ExtensionContext context) throws Exception {
+        context.getStore(NAMESPACE).put("snapshot", new Snapshot());
+    }
+
+    @Override
+    public void afterAll(ExtensionContext context) throws Exception {
+        Snapshot start = context.getStore(NAMESPACE).remove("snapshot", Snapshot.class);
+        if (start == null) return;
+        System.out.println(
+                "GC "
+                        + context.getRequiredTestClass().getCanonicalName()
+                        + ": "
+                        + new Snapshot().diff(start));
+    }
+
+    @Override
+    public void beforeTestExecution(ExtensionContext context) throws Exception {
+        Snapshot classStart = getClassSnapshot(context);
+        // reset the peak, but keep the peak of the class
+        if (classStart != null) classStart.updatePeak();
+        resetPeak();
+        context.getStore(NAMESPACE).put("snapshot", new Snapshot());
+    }
+
+    @Override
+    public void afterTestExecution(ExtensionContext context) throws Exception {
+        Snapshot start = context.getStore(NAMESPACE).remove("snapshot", Snapshot.class);
+        if (start == null) return;
+        Snapshot classStart = getClassSnapshot(context);
+        if (classStart != null) classStart.updatePeak();
+        System.out.println("GC: " + new Snapshot().diff(start));
+    }
+
+    private Snapshot getClassSnapshot(ExtensionContext context) {
+        return context.getParent()
+                .map(p -> p.getStore(NAMESPACE).get("snapshot", Snapshot.class))
+                .orElse(null);
+    }
+
+    private static void resetPeak() {
+        for (MemoryPoolMXBean pool : getOldGenPools()) pool.resetPeakUsage();
+    }
+
+    private static List<MemoryPoolMXBean> getOldGenPools() {
+        List<MemoryPoolMXBean> out = new ArrayList<>();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() != MemoryType.HEAP) continue;
+            String name = pool.getName();
+            if (name.contains("Old") || name.contains("Tenured")) out.add(pool);
+        }
+        if (out.isEmpty()) {
+            // single generation collectors like ZGC or Shenandoah
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+                if (pool.getType() == MemoryType.HEAP) out.add(pool);
+        }
+        return out;
+    }
+
+    private static class Snapshot {
+
+        private final List<GarbageCollectorMXBean> collectors =
+                ManagementFactory.getGarbageCollectorMXBeans();
+        private final long[] counts = new long[collectors.size()];
+        private final long[] times = new long[collectors.size()];
+        private final long oldUsed;
+        private long oldPeak;
+
+        private Snapshot() {
+            for (int i = 0; i < counts.length; i++) {
+                GarbageCollectorMXBean gc = collectors.get(i);
+                counts[i] = gc.getCollectionCount();
+                times[i] = gc.getCollectionTime();
+            }
+            long used = 0;
+            long peak = 0;
+            for (MemoryPoolMXBean pool : getOldGenPools()) {
+                MemoryUsage usage = pool.getUsage();
+                if (usage != null) used += usage.getUsed();
+                MemoryUsage peakUsage = pool.getPeakUsage();
+                if (peakUsage != null) peak += peakUsage.getUsed();
+            }
+            oldUsed = used;
+            oldPeak = peak;
+        }
+
+        private synchronized void updatePeak() {
+            long peak = 0;
+            for (MemoryPoolMXBean pool : getOldGenPools()) {
+                MemoryUsage peakUsage = pool.getPeakUsage();
+                if (peakUsage != null) peak += peakUsage.getUsed();
+            }
+            oldPeak = Math.max(oldPeak, peak);
+        }
+
+        private String diff(Snapshot start) {
+            StringBuilder sb = new StringBuilder();
+            long pauses = 0;
+            for (int i = 0; i < counts.length && i < start.counts.length; i++) {
+                long cnt = counts[i] - start.counts[i];
+                long time = times[i] - start.times[i];
+                pauses += time;
+                if (cnt == 0) continue;
+                sb.append(collectors.get(i).getName())
+                        .append(' ')
+                        .append(cnt)
+                        .append("x ")
+                        .append(time)
+                        .append("ms, ");
+            }
+            if (sb.length() == 0) sb.append("no collections, ");
+            long growth = oldUsed - start.oldUsed;
+            long peak;
+            synchronized (start) {
+                peak = Math.max(start.oldPeak, oldPeak);
+            }
+            sb.append("total ")
+                    .append(pauses)
+                    .append("ms, old gen ")
+                    .append(growth < 0 ? "-" : "+")
+                    .append(TString.toByteDisplayString(Math.abs(growth)))
+                    .append(" (now ")
+                    .append(TString.toByteDisplayString(oldUsed))
+                    .append(", peak ")
+                    .append(TString.toByteDisplayString(peak))
+                    .append(")");
+            return sb.toString();
+        }
+    }
+}
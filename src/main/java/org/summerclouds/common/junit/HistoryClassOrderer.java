@@ -0,0 +1,52 @@
+/**
+ * Copyright (C) 2022 Mike Hummel (mh@mhus.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.summerclouds.common.junit;
+
+import java.util.Comparator;
+
+import org.junit.jupiter.api.ClassDescriptor;
+import org.junit.jupiter.api.ClassOrderer;
+import org.junit.jupiter.api.ClassOrdererContext;
+import org.summerclouds.common.junit.TestHistory.Entry;
+
+/**
+ * Orders the test classes by the TestHistory. Classes failed in the previous run first, then the
+ * classes sorted by duration, fast ones first. Unknown classes are treated as fast. Without
+ * history the order is not changed.
+ *
+ * <p>Usage: junit.jupiter.testclass.order.default =
+ * org.summerclouds.common.junit.HistoryClassOrderer
+ */
+public class HistoryClassOrderer implements ClassOrderer {
+
+    @Override
+    public void orderClasses(ClassOrdererContext context) {
+        if (!TestHistory.isEnabled() || TestHistory.isEmpty()) return;
+        context.getClassDescriptors()
+                .sort(
+                        Comparator.comparing(
+                                (ClassDescriptor d) ->
+                                        TestHistory.getClass(d.getTestClass().getCanonicalName()),
+                                HistoryClassOrderer::compare));
+    }
+
+    static int compare(Entry a, Entry b) {
+        boolean failedA = a != null && a.isFailed();
+        boolean failedB = b != null && b.isFailed();
+        if (failedA != failedB) return failedA ? -1 : 1;
+        return Long.compare(a == null ? 0 : a.getNanos(), b == null ? 0 : b.getNanos());
+    }
+}
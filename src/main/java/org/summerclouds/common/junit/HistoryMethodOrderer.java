@@ -0,0 +1,47 @@
+/**
+ * Copyright (C) 2022 Mike Hummel (mh@mhus.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.summerclouds.common.junit;
+
+import java.util.Comparator;
+
+import org.junit.jupiter.api.MethodDescriptor;
+import org.junit.jupiter.api.MethodOrderer;
+import org.junit.jupiter.api.MethodOrdererContext;
+
+/**
+ * Orders the test methods by the TestHistory. Methods failed in the previous run first, then the
+ * methods sorted by duration, fast ones first. Unknown methods are treated as fast. Without history
+ * the order is not changed.
+ *
+ * <p>Usage: junit.jupiter.testmethod.order.default =
+ * org.summerclouds.common.junit.HistoryMethodOrderer or @TestMethodOrder
+ */
+public class HistoryMethodOrderer implements MethodOrderer {
+
+    @Override
+    public void orderMethods(MethodOrdererContext context) {
+        if (!TestHistory.isEnabled() || TestHistory.isEmpty()) return;
+        String className = context.getTestClass().getCanonicalName();
+        context.getMethodDescriptors()
+                .sort(
+                        Comparator.comparing(
+                                (MethodDescriptor d) ->
+                                        TestHistory.getTest(
+                                                className,
+                                                TestUtil.getMethodSignature(d.getMethod())),
+                                HistoryClassOrderer::compare));
+    }
+}
@@ -0,0 +1,308 @@
+/**
+ * Copyright (C) 2022 Mike Hummel (mh@mhus.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.summerclouds.common.junit;
+
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.io.PrintStream;
+import java.time.Duration;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import org.summerclouds.common.internal.TLatencyHistogram;
+import org.summerclouds.common.internal.TStopWatch;
+
+/**
+ * Drives a task for a duration and records the latency of each call into a histogram.
+ *
+ * <p>With rate() the calls are started at a fixed rate, each in its own (virtual if available)
+ * thread. With concurrency() a fixed number of threads call the task in a loop, together with
+ * rate() each thread is paced to its share of the rate. If a rate is given the latency is measured
+ * from the intended start time of the call, not the actual one, so stalls of the system are not
+ * hidden by calls which could not be started (coordinated omission).
+ *
+ * <p>Usage:
+ *
+ * <pre>
+ * LoadGenerator load = new LoadGenerator("lookup", () -&gt; cache.get("key"))
+ *         .rate(1000).duration(Duration.ofSeconds(5)).run();
+ * load.assertNoErrors();
+ * load.assertP99Below(Duration.ofMillis(2));
+ * load.assertThroughputAbove(950);
+ * </pre>
+ */
+public class LoadGenerator {
+
+    private static final AtomicInteger threadCount = new AtomicInteger();
+
+    private final String name;
+    private final Callable<?> task;
+    private double rate;
+    private int concurrency;
+    private Duration duration = Duration.ofSeconds(1);
+    private Duration timeout = Duration.ofSeconds(30);
+    private final TLatencyHistogram histogram = new TLatencyHistogram();
+    private final LongAdder errors = new LongAdder();
+    private final AtomicReference<Throwable> firstError = new AtomicReference<>();
+    private final AtomicLong inFlight = new AtomicLong();
+    private volatile boolean timedOut;
+    private long incomplete;
+    private long elapsedNanos;
+
+    public LoadGenerator(String name, Callable<?> task) {
+        this.name = name;
+        this.task = task;
+    }
+
+    /**
+     * Start the calls at a fixed rate.
+     *
+     * @param callsPerSecond Target rate, at most one call per nano second
+     * @return this
+     */
+    public LoadGenerator rate(double callsPerSecond) {
+        // NaN fails too
+        if (!(callsPerSecond >= 0 && callsPerSecond <= 1e9))
+            throw new IllegalArgumentException("rate can't be scheduled: " + callsPerSecond);
+        this.rate = callsPerSecond;
+        return this;
+    }
+
+    /**
+     * Call the task by a fixed number of threads.
+     *
+     * @param threads Number of concurrent callers
+     * @return this
+     */
+    public LoadGenerator concurrency(int threads) {
+        this.concurrency = threads;
+        return this;
+    }
+
+    /**
+     * Time to start new calls, default is one second.
+     *
+     * @param duration The duration
+     * @return this
+     */
+    public LoadGenerator duration(Duration duration) {
+        this.duration = duration;
+        return this;
+    }
+
+    /**
+     * Time to wait for running calls after the duration, default is 30 seconds. Calls not finished
+     * are interrupted and counted as errors.
+     *
+     * @param timeout The timeout
+     * @return this
+     */
+    public LoadGenerator timeout(Duration timeout) {
+        this.timeout = timeout;
+        return this;
+    }
+
+    /**
+     * Execute the load and print the results.
+     *
+     * @return this
+     * @throws InterruptedException If interrupted, the calls not started are dropped, the running
+     *     calls are interrupted and the interrupt flag of the thread stays set
+     */
+    public LoadGenerator run() throws InterruptedException {
+        if (rate <= 0 && concurrency <= 0)
+            throw new IllegalStateException("rate or concurrency must be set");
+        ExecutorService executor = newExecutor();
+        long start = System.nanoTime();
+        long end = start + duration.toNanos();
+        boolean finished = false;
+        try {
+            if (concurrency > 0) {
+                // each caller is paced to its share of the rate
+                for (int i = 0; i < concurrency; i++) {
+                    int first = i;
+                    executor.execute(() -> loop(start, first, concurrency, end));
+                }
+            } else {
+                dispatch(executor, start, end);
+            }
+            executor.shutdown();
+            // the callers of the concurrency mode are running until the end
+            long wait = Math.max(0, end - System.nanoTime()) + timeout.toNanos();
+            if (!executor.awaitTermination(wait, TimeUnit.NANOSECONDS)) {
+                timedOut = true;
+                long queued = executor.shutdownNow().size();
+                executor.awaitTermination(1, TimeUnit.SECONDS);
+                incomplete = queued + inFlight.get();
+            }
+            finished = true;
+        } catch (InterruptedException e) {
+            // e.g. by the fail fast extension, the caller can still see it
+            Thread.currentThread().interrupt();
+            throw e;
+        } finally {
+            elapsedNanos = System.nanoTime() - start;
+            // no calls are running after run() has thrown
+            if (!finished) executor.shutdownNow();
+        }
+        print(System.out);
+        return this;
+    }
+
+    private void dispatch(ExecutorService executor, long start, long end)
+            throws InterruptedException {
+        for (long n = 0; ; n++) {
+            // not accumulating an interval, it would be truncated to full nano seconds
+            long intended = start + (long) (n * 1e9 / rate);
+            if (intended >= end) return;
+            long wait = intended - System.nanoTime();
+            if (wait > 0) LockSupport.parkNanos(wait);
+            // parkNanos returns at once if interrupted, the calls would not be paced anymore
+            if (Thread.interrupted()) throw new InterruptedException();
+            // if behind the schedule the calls are started as fast as possible
+            executor.execute(() -> call(intended));
+        }
+    }
+
+    private void loop(long start, int first, int step, long end) {
+        for (long n = first; !Thread.currentThread().isInterrupted(); n += step) {
+            long now = System.nanoTime();
+            long intended = rate > 0 ? start + (long) (n * 1e9 / rate) : now;
+            if (intended >= end) return;
+            long wait = intended - now;
+            if (wait > 0) LockSupport.parkNanos(wait);
+            call(intended);
+        }
+    }
+
+    private void call(long intended) {
+        inFlight.incrementAndGet();
+        Throwable error = null;
+        try {
+            task.call();
+        } catch (Throwable t) {
+            error = t;
+        }
+        // calls finished after the timeout stay in flight and are counted as incomplete
+        if (timedOut) return;
+        if (error != null) {
+            errors.increment();
+            firstError.compareAndSet(null, error);
+        }
+        histogram.record(System.nanoTime() - intended);
+        inFlight.decrementAndGet();
+    }
+
+    private static ExecutorService newExecutor() {
+        try {
+            // java 21
+            return (ExecutorService)
+                    Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(
+                    r -> {
+                        Thread t = new Thread(r, "LoadGenerator-" + threadCount.incrementAndGet());
+                        t.setDaemon(true);
+                        return t;
+                    });
+        }
+    }
+
+    /** @return latencies of all calls in nano seconds */
+    public TLatencyHistogram getHistogram() {
+        return histogram;
+    }
+
+    /** @return number of finished calls */
+    public long getCalls() {
+        return histogram.getCount();
+    }
+
+    /** @return calls failed with an exception or not finished */
+    public long getErrors() {
+        return errors.sum() + incomplete;
+    }
+
+    /** @return the first exception thrown by the task or null */
+    public Throwable getFirstError() {
+        return firstError.get();
+    }
+
+    /** @return finished calls per second */
+    public double getThroughput() {
+        return elapsedNanos == 0 ? 0 : histogram.getCount() * 1e9 / elapsedNanos;
+    }
+
+    public void assertNoErrors() {
+        if (getErrors() > 0)
+            fail(
+                    name + ": " + getErrors() + " of " + getCalls() + " calls failed",
+                    getFirstError());
+    }
+
+    public void assertP99Below(Duration max) {
+        assertPercentileBelow(99, max);
+    }
+
+    public void assertPercentileBelow(double percent, Duration max) {
+        long value = histogram.getPercentile(percent);
+        if (value >= max.toNanos())
+            fail(
+                    name
+                            + ": p"
+                            + percent
+                            + " "
+                            + TStopWatch.getNanoIntervalAsString(value)
+                            + " is not below "
+                            + TStopWatch.getNanoIntervalAsString(max.toNanos()));
+    }
+
+    public void assertThroughputAbove(double callsPerSecond) {
+        double throughput = getThroughput();
+        if (throughput <= callsPerSecond)
+            fail(
+                    name
+                            + ": throughput "
+                            + String.format("%.1f", throughput)
+                            + "/s is not above "
+                            + callsPerSecond
+                            + "/s");
+    }
+
+    public void print(PrintStream out) {
+        out.println(
+                "Load: "
+                        + name
+                        + " ("
+                        + (rate > 0 ? "rate " + rate + "/s " : "")
+                        + (concurrency > 0 ? "concurrency " + concurrency + " " : "")
+                        + "for "
+                        + TStopWatch.getIntervalAsString(duration.toMillis())
+                        + ")");
+        out.println("Calls: " + getCalls() + " Errors: " + getErrors());
+        out.println("Throughput: " + String.format("%.1f", getThroughput()) + "/s");
+        out.println("Median: " + TStopWatch.getNanoIntervalAsString(histogram.getPercentile(50)));
+        out.println("P99: " + TStopWatch.getNanoIntervalAsString(histogram.getPercentile(99)));
+        out.println("Max: " + TStopWatch.getNanoIntervalAsString(histogram.getMax()));
+    }
+}
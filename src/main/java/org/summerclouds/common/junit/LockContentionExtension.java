@@ -0,0 +1,232 @@
+/**
+ * Copyright (C) 2022 Mike Hummel (mh@mhus.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.summerclouds.common.junit;
+
+import java.lang.management.LockInfo;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.extension.AfterTestExecutionCallback;
+import org.junit.jupiter.api.extension.BeforeTestExecutionCallback;
+import org.junit.jupiter.api.extension.ExtensionContext;
+import org.junit.jupiter.api.extension.ExtensionContext.Namespace;
+import org.summerclouds.common.internal.TCast;
+
+/**
+ * Enables the thread contention monitoring while a test is running and prints how often and how
+ * long the test thread and the threads started by the test were blocked or waiting. A sampler
+ * (interval test.lockContention.interval, default 5ms) collects the locks the threads are blocked
+ * on or waiting for, the report groups them by the class of the lock object.
+ *
+ * <p>Threads started while the test is running are counted as started by the test. Threads of pools
+ * created before the test are not counted. If tests are running in parallel, the threads started
+ * by the other tests are counted too. Set test.lockContention.tagThreads=true to count only the
+ * threads started by the test or by threads started by it. The test thread then gets a delegating
+ * context class loader while running, new threads inherit it from the thread creating them. Code
+ * using the context class loader as a key, e.g. ServiceLoader or XML factories, sees a new loader
+ * in each test, and threads keeping it hold the class loader after the test.
+ *
+ * <p>Usage: @ExtendWith(LockContentionExtension.class)
+ */
+public class LockContentionExtension
+        implements BeforeTestExecutionCallback, AfterTestExecutionCallback {
+
+    private static final Namespace NAMESPACE = Namespace.create(LockContentionExtension.class);
+    private static final ThreadMXBean tmxb = ManagementFactory.getThreadMXBean();
+    private static final AtomicInteger active = new AtomicInteger();
+    private static boolean wasEnabled;
+
+    @Override
+    public void beforeTestExecution(ExtensionContext context) throws Exception {
+        if (!tmxb.isThreadContentionMonitoringSupported()) return;
+        synchronized (active) {
+            if (active.getAndIncrement() == 0) {
+                wasEnabled = tmxb.isThreadContentionMonitoringEnabled();
+                tmxb.setThreadContentionMonitoringEnabled(true);
+            }
+        }
+        Thread thread = Thread.currentThread();
+        Owner owner =
+                TCast.toboolean(TestUtil.getProperty("test.lockContention.tagThreads", ""), false)
+                        ? new Owner(thread.getContextClassLoader())
+                        : null;
+        Sampler sampler =
+                new Sampler(
+                        thread.getId(),
+                        owner,
+                        TCast.tolong(TestUtil.getProperty("test.lockContention.interval", ""), 5));
+        context.getStore(NAMESPACE).put("sampler", sampler);
+        if (owner != null) thread.setContextClassLoader(owner);
+        sampler.start();
+    }
+
+    @Override
+    public void afterTestExecution(ExtensionContext context) throws Exception {
+        Sampler sampler = context.getStore(NAMESPACE).remove("sampler", Sampler.class);
+        if (sampler == null) return;
+        sampler.finish();
+        Thread thread = Thread.currentThread();
+        if (sampler.owner != null && thread.getContextClassLoader() == sampler.owner)
+            thread.setContextClassLoader(sampler.owner.getParent());
+        synchronized (active) {
+            if (active.decrementAndGet() == 0 && !wasEnabled)
+                tmxb.setThreadContentionMonitoringEnabled(false);
+        }
+        System.out.println(sampler.report());
+    }
+
+    /** Marks the threads started by a test, loads everything by the original class loader. */
+    private static class Owner extends ClassLoader {
+        private Owner(ClassLoader parent) {
+            super("LockContention", parent);
+        }
+    }
+
+    private static class Sampler extends Thread {
+
+        private final long testThread;
+        private final Owner owner;
+        private final long interval;
+        private final Set<Long> before = new HashSet<>();
+        private final Set<Long> spawned = new HashSet<>();
+        private final Map<Long, ThreadInfo> start = new HashMap<>();
+        private final Map<Long, ThreadInfo> last = new HashMap<>();
+        private final Map<String, int[]> locks = new TreeMap<>();
+        private volatile boolean running = true;
+
+        private Sampler(long testThread, Owner owner, long interval) {
+            super("LockContention");
+            setDaemon(true);
+            this.testThread = testThread;
+            this.owner = owner;
+            this.interval = Math.max(1, interval);
+            for (long id : tmxb.getAllThreadIds()) before.add(id);
+            before.add(getId());
+            ThreadInfo info = tmxb.getThreadInfo(testThread);
+            if (info != null) start.put(testThread, info);
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                synchronized (this) {
+                    if (!running) return;
+                    sample();
+                }
+                try {
+                    Thread.sleep(interval);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+
+        private void sample() {
+            // threads are checked once, a later change of the context class loader is ignored
+            for (Thread thread : getThreads()) {
+                Long id = thread.getId();
+                if (!before.add(id) || thread instanceof Sampler) continue;
+                if (owner == null || thread.getContextClassLoader() == owner) spawned.add(id);
+            }
+            long[] idArray = new long[spawned.size() + 1];
+            int i = 0;
+            idArray[i++] = testThread;
+            for (long id : spawned) idArray[i++] = id;
+            for (ThreadInfo info : tmxb.getThreadInfo(idArray, 0)) {
+                if (info == null) continue; // terminated
+                last.put(info.getThreadId(), info);
+                LockInfo lock = info.getLockInfo();
+                if (lock == null) continue;
+                int[] cnt = locks.computeIfAbsent(lock.getClassName(), k -> new int[2]);
+                if (info.getThreadState() == Thread.State.BLOCKED) cnt[0]++;
+                else cnt[1]++;
+            }
+        }
+
+        private void finish() throws InterruptedException {
+            synchronized (this) {
+                // before joining the sampler, the join would count as waiting of the test thread
+                sample();
+                running = false;
+            }
+            interrupt();
+            join();
+        }
+
+        private static Thread[] getThreads() {
+            ThreadGroup group = Thread.currentThread().getThreadGroup();
+            while (group.getParent() != null) group = group.getParent();
+            Thread[] threads = new Thread[group.activeCount() + 16];
+            int cnt;
+            while ((cnt = group.enumerate(threads, true)) == threads.length)
+                threads = new Thread[threads.length * 2];
+            return Arrays.copyOf(threads, cnt);
+        }
+
+        private synchronized String report() {
+            long blockedCount = 0;
+            long blockedTime = 0;
+            long waitedCount = 0;
+            long waitedTime = 0;
+            for (ThreadInfo info : last.values()) {
+                ThreadInfo first = start.get(info.getThreadId());
+                blockedCount +=
+                        info.getBlockedCount() - (first == null ? 0 : first.getBlockedCount());
+                blockedTime += info.getBlockedTime() - (first == null ? 0 : first.getBlockedTime());
+                waitedCount += info.getWaitedCount() - (first == null ? 0 : first.getWaitedCount());
+                waitedTime += info.getWaitedTime() - (first == null ? 0 : first.getWaitedTime());
+            }
+            StringBuilder sb = new StringBuilder();
+            sb.append("Locks: ")
+                    .append(last.size())
+                    .append(" thread(s), blocked ")
+                    .append(blockedCount)
+                    .append("x ")
+                    .append(blockedTime)
+                    .append("ms, waited ")
+                    .append(waitedCount)
+                    .append("x ")
+                    .append(waitedTime)
+                    .append("ms");
+            List<Entry<String, int[]>> list = new ArrayList<>(locks.entrySet());
+            list.sort(
+                    (a, b) ->
+                            (b.getValue()[0] + b.getValue()[1])
+                                    - (a.getValue()[0] + a.getValue()[1]));
+            for (Entry<String, int[]> entry : list) {
+                sb.append("\n  ")
+                        .append(entry.getKey())
+                        .append(": blocked ~")
+                        .append(entry.getValue()[0] * interval)
+                        .append("ms, waiting ~")
+                        .append(entry.getValue()[1] * interval)
+                        .append("ms");
+            }
+            return sb.toString();
+        }
+    }
+}
@@ -0,0 +1,62 @@
+/**
+ * Copyright (C) 2022 Mike Hummel (mh@mhus.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.summerclouds.common.junit;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+import org.junit.jupiter.api.extension.ExtendWith;
+
+/**
+ * Run the test method with warmup and measured iterations. The median and p99 of the measured
+ * iterations are recorded in a baseline file the first time. Later runs are validated against the
+ * baseline, same as TestUtil.recordOrValidateDirectory() does for directories.
+ *
+ * <p>The baseline file is baseline() or
+ * ${test.performance.baseline:src/test/resources/performance}/&lt;test class&gt;.properties. The
+ * entries are keyed by the method signature, invocations of parameterized tests get their index
+ * appended. Set test.performance.record=true to record the baselines again.
+ *
+ * <p>The warmup and measured iterations call the test method directly on the same instance, the
+ * BeforeEach and AfterEach methods are executed only once around all iterations. The test method
+ * must be repeatable without them.
+ *
+ * <p>With less than 100 iterations the p99 is the slowest iteration, a single GC pause or JIT
+ * compilation can exceed the budget. By default an exceeded budget is printed as warning, use
+ * fail() with enough iterations and a tolerant factor only.
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@ExtendWith(PerformanceBudgetExtension.class)
+public @interface PerformanceBudget {
+
+    /** Not measured iterations to warm up the JIT. */
+    int warmup() default 5;
+
+    /** Measured iterations. */
+    int iterations() default 20;
+
+    /** Allowed factor between the baseline and the current median or p99. */
+    double factor() default 1.5;
+
+    /** Fail the test if the budget is exceeded, only print a warning otherwise. */
+    boolean fail() default false;
+
+    /** Path of the baseline file, default is a file per test class. */
+    String baseline() default "";
+}
@@ -0,0 +1,187 @@
+/**
+ * Copyright (C) 2022 Mike Hummel (mh@mhus.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.summerclouds.common.junit;
+
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Properties;
+
+import org.junit.jupiter.api.extension.ExtensionContext;
+import org.junit.jupiter.api.extension.InvocationInterceptor;
+import org.junit.jupiter.api.extension.ReflectiveInvocationContext;
+import org.summerclouds.common.internal.TCast;
+
+public class PerformanceBudgetExtension implements InvocationInterceptor {
+
+    @Override
+    public void interceptTestMethod(
+            Invocation<Void> invocation,
+            ReflectiveInvocationContext<Method> invocationContext,
+            ExtensionContext extensionContext)
+            throws Throwable {
+        measure(invocation, invocationContext, extensionContext);
+    }
+
+    @Override
+    public void interceptTestTemplateMethod(
+            Invocation<Void> invocation,
+            ReflectiveInvocationContext<Method> invocationContext,
+            ExtensionContext extensionContext)
+            throws Throwable {
+        // parameterized and repeated tests
+        measure(invocation, invocationContext, extensionContext);
+    }
+
+    private void measure(
+            Invocation<Void> invocation,
+            ReflectiveInvocationContext<Method> invocationContext,
+            ExtensionContext extensionContext)
+            throws Throwable {
+
+        Method method = invocationContext.getExecutable();
+        PerformanceBudget budget = method.getAnnotation(PerformanceBudget.class);
+        if (budget == null) {
+            invocation.proceed();
+            return;
+        }
+
+        Object target = invocationContext.getTarget().orElse(null);
+        Object[] args = invocationContext.getArguments().toArray();
+        method.setAccessible(true);
+
+        for (int i = 0; i < budget.warmup(); i++) invoke(method, target, args);
+
+        int iterations = Math.max(1, budget.iterations());
+        long[] times = new long[iterations];
+        for (int i = 0; i < iterations - 1; i++) {
+            long start = System.nanoTime();
+            invoke(method, target, args);
+            times[i] = System.nanoTime() - start;
+        }
+        // the last one is the regular invocation
+        long start = System.nanoTime();
+        invocation.proceed();
+        times[iterations - 1] = System.nanoTime() - start;
+
+        BenchmarkResult result = new BenchmarkResult(method.getName(), times);
+        long median = result.getMedian();
+        long p99 = result.getP99();
+
+        Class<?> testClass = extensionContext.getRequiredTestClass();
+        File file = getBaselineFile(budget, testClass);
+        String key = getKey(budget, testClass, method, extensionContext.getUniqueId());
+        synchronized (PerformanceBudgetExtension.class) {
+            Properties baseline = new Properties();
+            if (file.exists()) {
+                try (InputStream is = new FileInputStream(file)) {
+                    baseline.load(is);
+                }
+            }
+            String oldMedian = baseline.getProperty(key + ".median");
+            String oldP99 = baseline.getProperty(key + ".p99");
+            if (oldMedian == null
+                    || oldP99 == null
+                    || TCast.toboolean(
+                            TestUtil.getProperty("test.performance.record", ""), false)) {
+                System.out.println(
+                        ">>> Record performance "
+                                + key
+                                + " to "
+                                + file
+                                + ": median="
+                                + median
+                                + "ns p99="
+                                + p99
+                                + "ns");
+                baseline.setProperty(key + ".median", String.valueOf(median));
+                baseline.setProperty(key + ".p99", String.valueOf(p99));
+                if (file.getParentFile() != null) file.getParentFile().mkdirs();
+                try (OutputStream os = new FileOutputStream(file)) {
+                    baseline.store(os, testClass.getCanonicalName());
+                }
+                return;
+            }
+            validate(budget, key, "median", median, TCast.tolong(oldMedian, 0));
+            validate(budget, key, "p99", p99, TCast.tolong(oldP99, 0));
+        }
+    }
+
+    private void validate(
+            PerformanceBudget budget, String key, String name, long current, long old) {
+        long max = (long) (old * budget.factor());
+        System.out.println(
+                ">>> Performance "
+                        + key
+                        + " "
+                        + name
+                        + ": "
+                        + current
+                        + "ns baseline "
+                        + old
+                        + "ns max "
+                        + max
+                        + "ns");
+        if (current <= max) return;
+        String msg =
+                "Performance budget of "
+                        + key
+                        + " exceeded, "
+                        + name
+                        + " "
+                        + current
+                        + "ns > "
+                        + old
+                        + "ns * "
+                        + budget.factor();
+        if (budget.fail()) fail(msg);
+        System.err.println("+++ WARNING " + msg);
+    }
+
+    private static File getBaselineFile(PerformanceBudget budget, Class<?> testClass) {
+        if (budget.baseline().length() > 0) return new File(budget.baseline());
+        String dir =
+                TestUtil.getProperty("test.performance.baseline", "src/test/resources/performance");
+        return new File(dir, testClass.getCanonicalName() + ".properties");
+    }
+
+    private static String getKey(
+            PerformanceBudget budget, Class<?> testClass, Method method, String uniqueId) {
+        StringBuilder key = new StringBuilder();
+        // a given baseline file can be shared by test classes
+        if (budget.baseline().length() > 0) key.append(testClass.getCanonicalName()).append('.');
+        key.append(TestUtil.getMethodSignature(method));
+        // e.g. [test-template-invocation:#2] of parameterized and repeated tests
+        int pos = uniqueId.lastIndexOf("-invocation:");
+        if (pos >= 0 && uniqueId.endsWith("]"))
+            key.append(uniqueId, pos + "-invocation:".length(), uniqueId.length() - 1);
+        return key.toString();
+    }
+
+    private static void invoke(Method method, Object target, Object[] args) throws Throwable {
+        try {
+            method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
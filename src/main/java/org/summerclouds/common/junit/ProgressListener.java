@@ -0,0 +1,221 @@
+/**
+ * Copyright (C) 2022 Mike Hummel (mh@mhus.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.summerclouds.common.junit;
+
+import java.io.PrintStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.junit.platform.engine.TestExecutionResult;
+import org.junit.platform.engine.TestSource;
+import org.junit.platform.engine.support.descriptor.MethodSource;
+import org.junit.platform.launcher.TestExecutionListener;
+import org.junit.platform.launcher.TestIdentifier;
+import org.junit.platform.launcher.TestPlan;
+import org.summerclouds.common.internal.TCast;
+import org.summerclouds.common.internal.TStopWatch;
+
+/**
+ * Streams the progress of the run to the console. Registered as service and enabled with
+ * test.progress=true (default in TestRunner).
+ *
+ * <p>Every test.progress.interval milliseconds (default 10000) a line with the finished, running
+ * and failed tests and the throughput is printed. Failures are printed when they happen. Tests
+ * running longer than test.progress.slow milliseconds (default 60000) are reported once with the
+ * current stack of the executing thread to find stuck tests.
+ */
+public class ProgressListener implements TestExecutionListener {
+
+    private final Map<TestIdentifier, Running> running = new ConcurrentHashMap<>();
+    private final LongAdder finished = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder aborted = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+    private TestPlan testPlan;
+    private long total;
+    private long startNanos;
+    private long slowNanos;
+    private volatile Thread reporter;
+
+    @Override
+    public void testPlanExecutionStarted(TestPlan testPlan) {
+        if (!TCast.toboolean(TestUtil.getProperty("test.progress", ""), false)) return;
+        this.testPlan = testPlan;
+        total = testPlan.countTestIdentifiers(TestIdentifier::isTest);
+        slowNanos =
+                TimeUnit.MILLISECONDS.toNanos(
+                        TCast.tolong(TestUtil.getProperty("test.progress.slow", ""), 60000));
+        long interval = TCast.tolong(TestUtil.getProperty("test.progress.interval", ""), 10000);
+        startNanos = System.nanoTime();
+        getOut().println("### Started " + total + " tests");
+        reporter = new Thread(() -> report(interval), "TestProgress");
+        reporter.setDaemon(true);
+        reporter.start();
+    }
+
+    @Override
+    public void testPlanExecutionFinished(TestPlan testPlan) {
+        if (reporter == null) return;
+        reporter.interrupt();
+        try {
+            reporter.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        reporter = null;
+        getOut().println("### Finished " + getStatus(finished.sum(), System.nanoTime(), 0));
+    }
+
+    @Override
+    public void executionStarted(TestIdentifier testIdentifier) {
+        if (reporter == null || !testIdentifier.isTest()) return;
+        // the engine notifies in the executing thread, remember it to dump its stack if stuck
+        running.put(testIdentifier, new Running(System.nanoTime(), Thread.currentThread()));
+    }
+
+    @Override
+    public void executionSkipped(TestIdentifier testIdentifier, String reason) {
+        if (reporter == null) return;
+        if (testIdentifier.isTest()) skipped.increment();
+        else
+            skipped.add(
+                    testPlan.getDescendants(testIdentifier).stream()
+                            .filter(TestIdentifier::isTest)
+                            .count());
+    }
+
+    @Override
+    public void executionFinished(
+            TestIdentifier testIdentifier, TestExecutionResult testExecutionResult) {
+        if (reporter == null || !testIdentifier.isTest()) return;
+        Running r = running.remove(testIdentifier);
+        finished.increment();
+        switch (testExecutionResult.getStatus()) {
+            case FAILED:
+                failed.increment();
+                getOut().println(
+                                "### FAILED "
+                                        + getName(testIdentifier)
+                                        + (r == null
+                                                ? ""
+                                                : " after " + toTime(System.nanoTime() - r.start))
+                                        + ": "
+                                        + testExecutionResult
+                                                .getThrowable()
+                                                .map(Throwable::toString)
+                                                .orElse("?"));
+                break;
+            case ABORTED:
+                aborted.increment();
+                break;
+            default:
+        }
+    }
+
+    private void report(long interval) {
+        long lastNanos = startNanos;
+        long lastFinished = 0;
+        try {
+            while (true) {
+                Thread.sleep(interval);
+                long now = System.nanoTime();
+                long f = finished.sum();
+                // throughput of the last interval to see if the run stalls
+                double perSecond =
+                        now == lastNanos ? 0 : (f - lastFinished) * 1e9 / (now - lastNanos);
+                getOut().println("### " + getStatus(f, now, perSecond));
+                lastNanos = now;
+                lastFinished = f;
+                reportSlow(now);
+            }
+        } catch (InterruptedException e) {
+            // finished
+        }
+    }
+
+    private void reportSlow(long now) {
+        for (Map.Entry<TestIdentifier, Running> entry : running.entrySet()) {
+            Running r = entry.getValue();
+            if (r.alerted || now - r.start < slowNanos) continue;
+            r.alerted = true;
+            getOut().println(
+                            TCast.toString(
+                                    "### SLOW "
+                                            + getName(entry.getKey())
+                                            + " running "
+                                            + toTime(now - r.start)
+                                            + " in "
+                                            + r.thread.getName(),
+                                    r.thread.getStackTrace()));
+        }
+    }
+
+    private String getStatus(long f, long now, double perSecond) {
+        double average = now == startNanos ? 0 : f * 1e9 / (now - startNanos);
+        return f
+                + "/"
+                + total
+                + " tests, "
+                + running.size()
+                + " running, "
+                + failed.sum()
+                + " failed, "
+                + aborted.sum()
+                + " aborted, "
+                + skipped.sum()
+                + " skipped, "
+                + (perSecond > 0 ? String.format("%.1f", perSecond) + " tests/s, " : "")
+                + String.format("%.1f", average)
+                + " tests/s average, elapsed "
+                + toTime(now - startNanos);
+    }
+
+    private static String getName(TestIdentifier testIdentifier) {
+        TestSource source = testIdentifier.getSource().orElse(null);
+        if (source instanceof MethodSource)
+            return ((MethodSource) source).getClassName()
+                    + "::"
+                    + ((MethodSource) source).getMethodName()
+                    + (testIdentifier
+                                    .getDisplayName()
+                                    .startsWith(((MethodSource) source).getMethodName() + "(")
+                            ? ""
+                            : " " + testIdentifier.getDisplayName());
+        return testIdentifier.getDisplayName();
+    }
+
+    private static String toTime(long nanos) {
+        return TStopWatch.getIntervalAsString(TimeUnit.NANOSECONDS.toMillis(nanos));
+    }
+
+    private static PrintStream getOut() {
+        // not captured by a parallel console
+        return TestConsole.getOut();
+    }
+
+    private static class Running {
+        private final long start;
+        private final Thread thread;
+        private volatile boolean alerted;
+
+        private Running(long start, Thread thread) {
+            this.start = start;
+            this.thread = thread;
+        }
+    }
+}
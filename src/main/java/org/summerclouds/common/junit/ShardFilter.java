@@ -0,0 +1,157 @@
+/**
+ * Copyright (C) 2022 Mike Hummel (mh@mhus.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.summerclouds.common.junit;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.zip.CRC32;
+
+import org.junit.platform.engine.FilterResult;
+import org.junit.platform.engine.TestDescriptor;
+import org.junit.platform.engine.TestSource;
+import org.junit.platform.engine.support.descriptor.ClassSource;
+import org.junit.platform.launcher.PostDiscoveryFilter;
+import org.summerclouds.common.internal.TCast;
+
+/**
+ * Runs only a part of the test classes to spread a suite over several JVMs or machines. Set
+ * test.shard.count to the number of shards and test.shard.index (0 based) to the shard to execute
+ * in this JVM. Registered as launcher service, without test.shard.count all tests are executed.
+ *
+ * <p>The classes are assigned by a stable hash of the class name. With
+ * test.shard.strategy=duration the classes are distributed by their recorded duration to get
+ * shards with the same wall time, unknown classes are still assigned by hash. The durations are
+ * read from the history file set by test.shard.history, not from the local test.history which is
+ * updated by each shard. The file must be identical for all shards, e.g. the merged history of the
+ * previous run, otherwise classes are executed twice or not at all. The checksum of the file is
+ * printed to compare the shards. Without test.shard.history the hash is used.
+ */
+public class ShardFilter implements PostDiscoveryFilter {
+
+    private int count = -1;
+    private int index;
+    private Map<String, Integer> assignment;
+
+    @Override
+    public FilterResult apply(TestDescriptor descriptor) {
+        init();
+        if (count <= 1) return FilterResult.included("no sharding");
+        String className = getTopLevelClass(descriptor);
+        if (className == null) return FilterResult.included("not a test class");
+        int shard = getShard(className);
+        if (shard == index) return FilterResult.included("shard " + shard + " of " + count);
+        return FilterResult.excluded("shard " + shard + " of " + count + ", executing " + index);
+    }
+
+    private synchronized void init() {
+        if (count >= 0) return;
+        int c = TCast.toint(TestUtil.getProperty("test.shard.count", ""), 0);
+        int i = TCast.toint(TestUtil.getProperty("test.shard.index", ""), 0);
+        if (c > 1 && (i < 0 || i >= c))
+            throw new IllegalArgumentException(
+                    "test.shard.index " + i + " out of range for test.shard.count " + c);
+        if (c > 1 && "duration".equals(TestUtil.getProperty("test.shard.strategy", "hash")))
+            assignment = assignByDuration(c, i);
+        index = i;
+        count = c;
+    }
+
+    private String getTopLevelClass(TestDescriptor descriptor) {
+        // the launcher filters the tests (leafs), find the outermost class of the test
+        String className = null;
+        for (TestDescriptor d = descriptor; d != null; d = d.getParent().orElse(null)) {
+            TestSource source = d.getSource().orElse(null);
+            if (source instanceof ClassSource) className = ((ClassSource) source).getClassName();
+        }
+        return className;
+    }
+
+    private int getShard(String className) {
+        if (assignment != null) {
+            Integer shard = assignment.get(className);
+            if (shard != null) return shard;
+        }
+        // String.hashCode is specified and stable, mix it since class names differ in few chars
+        int h = className.hashCode();
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return Math.floorMod(h, count);
+    }
+
+    private static Map<String, Integer> assignByDuration(int count, int index) {
+        String name = TestUtil.getProperty("test.shard.history", null);
+        PrintStream out = TestConsole.getOut();
+        if (name == null || name.length() == 0) {
+            out.println(
+                    "+++ WARNING test.shard.history not set, shard "
+                            + index
+                            + " of "
+                            + count
+                            + " is assigned by hash");
+            return null;
+        }
+        File file = new File(name);
+        Map<String, TestHistory.Entry> history = TestHistory.getClasses(file);
+        out.println(
+                ">>> Shard "
+                        + index
+                        + " of "
+                        + count
+                        + " by duration of "
+                        + history.size()
+                        + " classes from "
+                        + file
+                        + " checksum "
+                        + getChecksum(file));
+        // longest processing time first, deterministic for equal durations
+        List<Entry<String, TestHistory.Entry>> classes = new ArrayList<>(history.entrySet());
+        classes.sort(
+                (a, b) -> {
+                    int c = Long.compare(b.getValue().getNanos(), a.getValue().getNanos());
+                    return c != 0 ? c : a.getKey().compareTo(b.getKey());
+                });
+        long[] load = new long[count];
+        Map<String, Integer> shards = new HashMap<>();
+        for (Entry<String, TestHistory.Entry> entry : classes) {
+            int min = 0;
+            for (int i = 1; i < count; i++) if (load[i] < load[min]) min = i;
+            load[min] += entry.getValue().getNanos();
+            shards.put(entry.getKey(), min);
+        }
+        return shards;
+    }
+
+    private static String getChecksum(File file) {
+        if (!file.exists()) return "none";
+        CRC32 crc = new CRC32();
+        try {
+            crc.update(Files.readAllBytes(file.toPath()));
+        } catch (IOException e) {
+            return e.toString();
+        }
+        return Long.toHexString(crc.getValue());
+    }
+}
@@ -17,53 +17,96 @@ package org.summerclouds.common.junit;
 
 import java.io.InputStream;
 import java.io.PrintStream;
+import java.lang.reflect.Method;
 import java.util.Optional;
 import java.util.Scanner;
+import java.util.concurrent.Callable;
 
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.TestInfo;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.extension.ExtensionContext;
+import org.opentest4j.TestAbortedException;
 import org.summerclouds.common.internal.TCast;
+import org.summerclouds.common.internal.TConsoleFactory;
 import org.summerclouds.common.internal.TObject;
 import org.summerclouds.common.internal.TStopWatch;
+import org.summerclouds.common.internal.TString;
+import org.summerclouds.common.internal.TSystem;
+import org.summerclouds.common.junit.TestReport.STATUS;
 
+@ExtendWith({TestCaseExtension.class, FailFastExtension.class})
 public class TestCase extends TObject {
 
     private TStopWatch timer;
+    private long startAllocated;
+    private long allocated = -1;
+    private TestInfo testInfo;
     protected boolean skipTest = false;
+    protected boolean testExecuted = false;
+    protected Throwable testFailure;
     private static PrintStream out;
     private static PrintStream err;
     private static InputStream in;
     protected static boolean waitBeforeExecute = false;
+    protected static boolean parallelConsole = false;
+    /** Buffer the output of each test and print it only if the test failed, set by test.quiet. */
+    protected static boolean quietConsole = false;
+    /** Maximum bytes kept of the output of a test in quiet mode, set by test.quiet.tail. */
+    protected static int quietTail = 65536;
+
+    private static volatile Object sink;
 
     @BeforeAll
     public static void beforeAll(TestInfo testInfo) {
-        System.out.println();
-        Optional<Class<?>> clazz = testInfo.getTestClass();
-        if (clazz.isPresent())
-            System.out.println("START TEST FOR " + clazz.get().getCanonicalName());
-        else System.out.println("START TEST FOR UNKNOWN");
+        if (TCast.toboolean(TestUtil.getProperty("test.quiet", ""), false)) {
+            quietConsole = true;
+            quietTail = TCast.toint(TestUtil.getProperty("test.quiet.tail", ""), quietTail);
+        }
+        if (TestUtil.isBanners() && !quietConsole) {
+            System.out.println();
+            Optional<Class<?>> clazz = testInfo.getTestClass();
+            if (clazz.isPresent())
+                System.out.println("START TEST FOR " + clazz.get().getCanonicalName());
+            else System.out.println("START TEST FOR UNKNOWN");
+        }
         out = System.out;
         err = System.err;
         in = System.in;
-        if (TCast.toboolean(System.getenv().getOrDefault("test.waitBeforeExecute", ""), false))
+        if (TCast.toboolean(TSystem.getenv("test.waitBeforeExecute"), false))
             waitBeforeExecute = true;
+        if (TCast.toboolean(TestUtil.getProperty("test.parallelConsole", ""), false)) {
+            parallelConsole = true;
+            TestConsole.install();
+        }
+        if (quietConsole) TestConsole.install();
     }
 
     @BeforeEach
     public void beforeEach(TestInfo testInfo) throws SkipTestException {
 
-        if (out != null) System.setOut(out);
-        if (err != null) System.setErr(err);
-        if (in != null) System.setIn(in);
+        // the instance is shared by all tests of a class with the per class lifecycle
+        timer = null;
+        allocated = -1;
+        testExecuted = false;
+        testFailure = null;
+        this.testInfo = testInfo;
+        resetConsole();
 
         if (skipTest) throw new SkipTestException();
 
-        System.out.println();
-        System.out.println("--------------------------------------------------");
+        if (quietConsole) TestConsole.begin(quietTail);
+        else if (parallelConsole) TestConsole.begin();
+
+        boolean banners = TestUtil.isBanners();
+        if (banners) {
+            System.out.println();
+            System.out.println("--------------------------------------------------");
+        }
         TestUtil.start(testInfo);
-        System.out.println("--------------------------------------------------");
+        if (banners) System.out.println("--------------------------------------------------");
 
         if (waitBeforeExecute) {
             System.out.println("Press ENTER to start test");
@@ -71,21 +114,129 @@ public class TestCase extends TObject {
             scanner.nextLine();
             scanner.close();
         }
-        timer = new TStopWatch().start();
+        timer = new TStopWatch("test", true).start();
+        startAllocated = TSystem.getThreadAllocatedBytes();
     }
 
     @AfterEach
     public void afterEach(TestInfo testInfo) {
+        // the outcome is printed by finish() after the AfterEach methods of the sub classes
+        if (timer == null || !timer.isRunning()) return;
         timer.stop();
+        allocated = startAllocated < 0 ? -1 : TSystem.getThreadAllocatedBytes() - startAllocated;
+    }
+
+    /**
+     * Quick micro benchmark for component tests where JMH is too heavy. Every iteration is timed
+     * separately with System.nanoTime(), so the task should run longer than some micro seconds.
+     * The results of the task are consumed to prevent dead code elimination.
+     *
+     * @param name Name in the output
+     * @param warmupIterations Not measured iterations to warm up the JIT
+     * @param iterations Measured iterations
+     * @param task The code to measure
+     * @return The measured times
+     * @throws Exception Thrown by the task
+     */
+    protected BenchmarkResult benchmark(
+            String name, int warmupIterations, int iterations, Callable<?> task) throws Exception {
+        for (int i = 0; i < warmupIterations; i++) consume(task.call());
+        long[] times = new long[Math.max(1, iterations)];
+        for (int i = 0; i < times.length; i++) {
+            long start = System.nanoTime();
+            Object result = task.call();
+            times[i] = System.nanoTime() - start;
+            consume(result);
+        }
+        BenchmarkResult result = new BenchmarkResult(name, times);
+        // captured and dropped for successful tests in quiet mode
+        boolean banners = TestUtil.isBanners();
+        if (banners) {
+            System.out.println();
+            System.out.println("--------------------------------------------------");
+        }
+        result.print(System.out);
+        if (banners) System.out.println("--------------------------------------------------");
+        return result;
+    }
+
+    /**
+     * Blackhole for benchmarks, use it for values calculated in the task but not returned.
+     *
+     * @param value The value to consume
+     */
+    protected static void consume(Object value) {
+        sink = value;
+    }
 
+    /**
+     * Called by TestCaseExtension when all AfterEach methods are executed to report the final
+     * outcome, including failures of the BeforeEach and AfterEach methods.
+     *
+     * @param context The test
+     */
+    void finish(ExtensionContext context) {
+        testFailure = context.getExecutionException().orElse(null);
+        STATUS status = getStatus();
+        // print the asynchronous log messages of this test before the next test starts
+        TConsoleFactory.flush();
+        if (timer == null) {
+            report(context, STATUS.SKIPPED, 0, -1);
+            endConsole(status);
+            return;
+        }
+        // stopped by afterEach() if not overwritten
+        timer.stop();
+        report(context, status, timer.getCurrentNanos(), allocated);
+
+        resetConsole();
+
+        boolean banners = TestUtil.isBanners();
+        if (banners) {
+            System.out.println();
+            System.out.println("--------------------------------------------------");
+        }
+        TestUtil.stop(testInfo, status);
+        if (banners) {
+            System.out.println("Time: " + timer.getCurrentTimeAsString());
+            if (allocated >= 0)
+                System.out.println("Allocated: " + TString.toByteDisplayString(allocated));
+            System.out.println("--------------------------------------------------");
+        }
+        endConsole(status);
+    }
+
+    private void endConsole(STATUS status) {
+        if (quietConsole) TestConsole.end(status == STATUS.FAILED);
+        else if (parallelConsole) TestConsole.end();
+    }
+
+    protected STATUS getStatus() {
+        if (testFailure instanceof SkipTestException) return STATUS.SKIPPED;
+        if (testFailure instanceof TestAbortedException) return STATUS.ABORTED;
+        if (testFailure != null) return STATUS.FAILED;
+        if (!testExecuted) return STATUS.SKIPPED;
+        return STATUS.SUCCESSFUL;
+    }
+
+    private void report(ExtensionContext context, STATUS status, long nanos, long allocated) {
+        if (!TestReport.isEnabled()) return;
+        TestReport.add(
+                new TestReport.Record(
+                        context.getTestClass().map(Class::getCanonicalName).orElse("?"),
+                        context.getTestMethod().map(Method::getName).orElse("?"),
+                        context.getTestMethod().map(TestUtil::getMethodSignature).orElse("?"),
+                        nanos,
+                        allocated,
+                        status,
+                        Thread.currentThread().getName()));
+    }
+
+    private void resetConsole() {
+        // in parallel mode the streams are shared and routed by TestConsole
+        if (parallelConsole || quietConsole) return;
         if (out != null) System.setOut(out);
         if (err != null) System.setErr(err);
         if (in != null) System.setIn(in);
-
-        System.out.println();
-        System.out.println("--------------------------------------------------");
-        TestUtil.stop(testInfo);
-        System.out.println("Time: " + timer.getCurrentTimeAsString());
-        System.out.println("--------------------------------------------------");
     }
 }
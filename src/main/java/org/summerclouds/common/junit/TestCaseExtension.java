@@ -0,0 +1,47 @@
+/**
+ * Copyright (C) 2022 Mike Hummel (mh@mhus.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.summerclouds.common.junit;
+
+import java.util.Optional;
+
+import org.junit.jupiter.api.extension.AfterEachCallback;
+import org.junit.jupiter.api.extension.AfterTestExecutionCallback;
+import org.junit.jupiter.api.extension.ExtensionContext;
+
+/**
+ * Registered by TestCase to provide the outcome of the test method before the AfterEach methods
+ * are called and to report the final outcome after all AfterEach methods.
+ */
+public class TestCaseExtension implements AfterTestExecutionCallback, AfterEachCallback {
+
+    @Override
+    public void afterTestExecution(ExtensionContext context) throws Exception {
+        Optional<Object> instance = context.getTestInstance();
+        if (instance.isPresent() && instance.get() instanceof TestCase) {
+            TestCase test = (TestCase) instance.get();
+            test.testExecuted = true;
+            test.testFailure = context.getExecutionException().orElse(null);
+        }
+    }
+
+    @Override
+    public void afterEach(ExtensionContext context) throws Exception {
+        // callbacks are called after the AfterEach methods, the exception is final
+        Optional<Object> instance = context.getTestInstance();
+        if (instance.isPresent() && instance.get() instanceof TestCase)
+            ((TestCase) instance.get()).finish(context);
+    }
+}
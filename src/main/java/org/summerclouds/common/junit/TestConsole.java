@@ -0,0 +1,215 @@
+/**
+ * Copyright (C) 2022 Mike Hummel (mh@mhus.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.summerclouds.common.junit;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+import org.summerclouds.common.internal.TCircularByteBuffer;
+
+/**
+ * Replaces System.out and System.err once by stream multiplexers routing the output of each test
+ * thread into its own buffer. The buffer is written in one piece to the original console at the
+ * end of the test. This way the output of tests running in parallel is not mixed and
+ * System.setOut/setErr must not be reset for each test.
+ *
+ * <p>Threads started by a test inherit the buffer as long as the test is running. With a tail
+ * size only the last bytes are kept in a ring buffer and the output can be dropped at the end, used
+ * by the quiet mode to print the output of failed tests only.
+ */
+public class TestConsole {
+
+    private static PrintStream out;
+    private static PrintStream err;
+    private static final InheritableThreadLocal<Capture> capture = new InheritableThreadLocal<>();
+
+    /** Install the multiplexers, it is safe to call it more than once. */
+    public static synchronized void install() {
+        if (out != null) return;
+        out = System.out;
+        err = System.err;
+        System.setOut(new PrintStream(new Router(out, true), true));
+        System.setErr(new PrintStream(new Router(err, false), true));
+    }
+
+    public static synchronized boolean isInstalled() {
+        return out != null;
+    }
+
+    /** Start buffering the output of the current thread. */
+    public static void begin() {
+        capture.set(new Capture(new Unbounded(), new Unbounded()));
+    }
+
+    /**
+     * Start buffering the output of the current thread, keep only the last bytes.
+     *
+     * @param tail Maximum bytes kept for out and err each
+     */
+    public static void begin(int tail) {
+        capture.set(new Capture(new Tail(tail), new Tail(tail)));
+    }
+
+    /** Stop buffering the output of the current thread and write the buffers to the console. */
+    public static void end() {
+        end(true);
+    }
+
+    /**
+     * Stop buffering the output of the current thread.
+     *
+     * @param write Write the buffers to the console or drop them
+     */
+    public static void end(boolean write) {
+        Capture c = capture.get();
+        capture.remove();
+        if (c == null) return;
+        c.close();
+        if (!write) return;
+        write(out, c.out);
+        write(err, c.err);
+    }
+
+    /**
+     * Return the original console stream.
+     *
+     * @return The original System.out or the current one if not installed
+     */
+    public static PrintStream getOut() {
+        PrintStream o = out;
+        return o == null ? System.out : o;
+    }
+
+    private static void write(PrintStream target, Buffer buffer) {
+        if (target == null || buffer.size() == 0) return;
+        synchronized (target) {
+            try {
+                buffer.writeTo(target);
+            } catch (IOException e) {
+                // PrintStream will not throw
+            }
+            target.flush();
+        }
+    }
+
+    private interface Buffer {
+        void write(int b);
+
+        void write(byte[] b, int off, int len);
+
+        int size();
+
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    private static class Unbounded extends ByteArrayOutputStream implements Buffer {}
+
+    private static class Tail implements Buffer {
+        private final TCircularByteBuffer buffer;
+        private final byte[] single = new byte[1];
+        private long dropped;
+
+        private Tail(int size) {
+            buffer = new TCircularByteBuffer(size);
+        }
+
+        @Override
+        public void write(int b) {
+            single[0] = (byte) b;
+            write(single, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            dropped += buffer.putOverwrite(b, off, len);
+        }
+
+        @Override
+        public int size() {
+            return buffer.length();
+        }
+
+        @Override
+        public void writeTo(OutputStream out) throws IOException {
+            if (dropped > 0) out.write(("... " + dropped + " bytes dropped\n").getBytes());
+            byte[] b = new byte[8192];
+            int len;
+            while ((len = buffer.get(b)) > 0) out.write(b, 0, len);
+        }
+    }
+
+    private static class Capture {
+        private final Buffer out;
+        private final Buffer err;
+        private volatile boolean closed;
+
+        private Capture(Buffer out, Buffer err) {
+            this.out = out;
+            this.err = err;
+        }
+
+        private synchronized void close() {
+            closed = true;
+        }
+    }
+
+    private static class Router extends OutputStream {
+
+        private final PrintStream target;
+        private final boolean stdout;
+
+        private Router(PrintStream target, boolean stdout) {
+            this.target = target;
+            this.stdout = stdout;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            Capture c = capture.get();
+            if (c != null && !c.closed) {
+                synchronized (c) {
+                    if (!c.closed) {
+                        (stdout ? c.out : c.err).write(b);
+                        return;
+                    }
+                }
+            }
+            target.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            Capture c = capture.get();
+            if (c != null && !c.closed) {
+                synchronized (c) {
+                    if (!c.closed) {
+                        (stdout ? c.out : c.err).write(b, off, len);
+                        return;
+                    }
+                }
+            }
+            target.write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            Capture c = capture.get();
+            if (c == null || c.closed) target.flush();
+        }
+    }
+}
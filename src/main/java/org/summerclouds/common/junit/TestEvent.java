@@ -0,0 +1,76 @@
+/**
+ * Copyright (C) 2022 Mike Hummel (mh@mhus.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.summerclouds.common.junit;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Registered;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event for the execution of a test between TestUtil.start() and stop(). Only loaded if
+ * TJfr.isRecording() to not link jdk.jfr into TestUtil.
+ */
+@Name("org.summerclouds.common.Test")
+@Label("Test")
+@Category({"Summerclouds", "Test"})
+@Description("Execution of a test method")
+@StackTrace(false)
+@Registered(false)
+class TestEvent extends Event {
+
+    static {
+        // registered on first use, TJfr allows it only while a flight recorder is initialized
+        FlightRecorder.register(TestEvent.class);
+    }
+
+    @Label("Class")
+    String className;
+
+    @Label("Method")
+    String methodName;
+
+    @Label("Status")
+    String status;
+
+    /**
+     * Begin an event.
+     *
+     * @param className Test class
+     * @param methodName Test method
+     * @return The event or null if not enabled
+     */
+    static Object start(String className, String methodName) {
+        // not escaping if no recording is active, the allocation is removed by the JIT
+        TestEvent event = new TestEvent();
+        if (!event.isEnabled()) return null;
+        event.className = className;
+        event.methodName = methodName;
+        event.begin();
+        return event;
+    }
+
+    static void stop(Object event, String status) {
+        TestEvent e = (TestEvent) event;
+        e.end();
+        e.status = status;
+        if (e.shouldCommit()) e.commit();
+    }
+}
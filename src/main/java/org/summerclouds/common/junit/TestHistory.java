@@ -0,0 +1,206 @@
+/**
+ * Copyright (C) 2022 Mike Hummel (mh@mhus.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.summerclouds.common.junit;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.summerclouds.common.internal.TCast;
+import org.summerclouds.common.junit.TestReport.Record;
+import org.summerclouds.common.junit.TestReport.STATUS;
+
+/**
+ * Duration and outcome of the tests of the previous runs, stored in the properties file set by
+ * test.history. Each TestCase test method is stored as
+ * "&lt;class&gt;#&lt;signature&gt;=&lt;nanos&gt;,&lt;status&gt;", e.g. "a.BTest#test(int)=1234,
+ * SUCCESSFUL". The signature contains the parameter types to separate overloaded methods. The
+ * invocations of parameterized and repeated tests are summed up, the method failed if one of them
+ * failed. The history is updated at the end of the run, tests not executed in the run keep their
+ * previous entry.
+ *
+ * <p>Used by HistoryClassOrderer and HistoryMethodOrderer.
+ */
+public class TestHistory {
+
+    private static final File file = initFile();
+    private static Map<String, Entry> tests;
+    private static Map<String, Entry> classes;
+
+    public static class Entry {
+        private long nanos;
+        private boolean failed;
+
+        private Entry(long nanos, boolean failed) {
+            this.nanos = nanos;
+            this.failed = failed;
+        }
+
+        public long getNanos() {
+            return nanos;
+        }
+
+        public boolean isFailed() {
+            return failed;
+        }
+    }
+
+    private static File initFile() {
+        String name = TestUtil.getProperty("test.history", null);
+        return name == null || name.length() == 0 ? null : new File(name);
+    }
+
+    public static boolean isEnabled() {
+        return file != null;
+    }
+
+    /**
+     * Return the history of a test method.
+     *
+     * @param className Canonical name of the test class
+     * @param methodSignature Name and parameter types of the test method, see
+     *     TestUtil.getMethodSignature()
+     * @return The entry or null if unknown
+     */
+    public static Entry getTest(String className, String methodSignature) {
+        load();
+        return tests.get(className + "#" + methodSignature);
+    }
+
+    /**
+     * Return the history of a test class, the sum of the durations of all methods. The class is
+     * failed if one of the methods failed.
+     *
+     * @param className Canonical name of the test class
+     * @return The entry or null if unknown
+     */
+    public static Entry getClass(String className) {
+        load();
+        return classes.get(className);
+    }
+
+    /**
+     * Return the history of all known test classes.
+     *
+     * @return Map of canonical class name and entry
+     */
+    public static Map<String, Entry> getClasses() {
+        load();
+        return classes;
+    }
+
+    /**
+     * Read the history of all test classes from the given file instead of test.history.
+     *
+     * @param file The history file
+     * @return Map of canonical class name and entry, empty if the file not exists
+     */
+    public static Map<String, Entry> getClasses(File file) {
+        Map<String, Entry> c = new HashMap<>();
+        parse(read(file), new HashMap<>(), c);
+        return c;
+    }
+
+    /**
+     * Check if there is any history.
+     *
+     * @return true if the history is empty
+     */
+    public static boolean isEmpty() {
+        load();
+        return tests.isEmpty();
+    }
+
+    private static synchronized void load() {
+        if (tests != null) return;
+        Map<String, Entry> t = new HashMap<>();
+        Map<String, Entry> c = new HashMap<>();
+        parse(read(file), t, c);
+        tests = Collections.unmodifiableMap(t);
+        classes = Collections.unmodifiableMap(c);
+    }
+
+    private static void parse(Properties prop, Map<String, Entry> t, Map<String, Entry> c) {
+        for (String key : prop.stringPropertyNames()) {
+            int pos = key.indexOf('#');
+            if (pos < 0) continue;
+            String[] parts = prop.getProperty(key).split(",");
+            Entry entry =
+                    new Entry(
+                            TCast.tolong(parts[0], 0),
+                            parts.length > 1 && STATUS.FAILED.name().equals(parts[1]));
+            t.put(key, entry);
+            Entry ce = c.computeIfAbsent(key.substring(0, pos), k -> new Entry(0, false));
+            ce.nanos += entry.nanos;
+            ce.failed |= entry.failed;
+        }
+    }
+
+    private static Properties read(File file) {
+        Properties prop = new Properties();
+        if (file == null || !file.exists()) return prop;
+        try (InputStream is = new FileInputStream(file)) {
+            prop.load(is);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return prop;
+    }
+
+    /**
+     * Merge the records of this run into the history file.
+     *
+     * @param records Records of the run
+     */
+    static synchronized void update(List<Record> records) {
+        if (file == null || records.isEmpty()) return;
+        Map<String, Entry> run = new HashMap<>();
+        Properties prop = read(file);
+        for (Record r : records) {
+            // skipped and aborted tests don't say anything about duration or outcome
+            if (r.getStatus() != STATUS.SUCCESSFUL && r.getStatus() != STATUS.FAILED) continue;
+            // the invocations of a parameterized test share the key
+            Entry entry =
+                    run.computeIfAbsent(
+                            r.getClassName() + "#" + r.getMethodSignature(),
+                            k -> new Entry(0, false));
+            entry.nanos += r.getNanos();
+            entry.failed |= r.getStatus() == STATUS.FAILED;
+            // entry of older versions keyed by the method name only
+            prop.remove(r.getClassName() + "#" + r.getMethodName());
+        }
+        for (Map.Entry<String, Entry> e : run.entrySet())
+            prop.setProperty(
+                    e.getKey(),
+                    e.getValue().nanos
+                            + ","
+                            + (e.getValue().failed ? STATUS.FAILED : STATUS.SUCCESSFUL));
+        if (file.getParentFile() != null) file.getParentFile().mkdirs();
+        try (OutputStream os = new FileOutputStream(file)) {
+            prop.store(os, "test history");
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
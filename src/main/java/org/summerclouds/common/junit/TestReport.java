@@ -0,0 +1,300 @@
+/**
+ * Copyright (C) 2022 Mike Hummel (mh@mhus.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.summerclouds.common.junit;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.summerclouds.common.internal.TCast;
+
+/**
+ * Collects the timing of all tests and writes them as JSON lines into the file configured by
+ * test.report. The file is written by a background thread in batches, the test threads only queue
+ * the records. At the end of the run the slowest tests and classes (test.report.slowest, default
+ * 10) are appended and printed to the console.
+ *
+ * <p>Example line: {"type":"test","class":"a.BTest","method":"test1","nanos":1234,
+ * "allocated":4096,"status":"SUCCESSFUL","thread":"main"}
+ *
+ * <p>allocated are the bytes allocated by the test thread or -1 if not supported by the JVM.
+ *
+ * <p>The records are also used to update the TestHistory if test.history is set.
+ */
+public class TestReport {
+
+    public enum STATUS {
+        SUCCESSFUL,
+        FAILED,
+        ABORTED,
+        SKIPPED
+    }
+
+    private static final int BATCH_SIZE = 500;
+    private static final Record END = new Record(null, null, null, 0, -1, null, null);
+
+    private static final File file = initFile();
+    private static final int slowest =
+            TCast.toint(TestUtil.getProperty("test.report.slowest", "10"), 10);
+    private static final List<Record> records = new ArrayList<>();
+    private static final BlockingQueue<Record> queue = new LinkedBlockingQueue<>();
+    private static Thread writer;
+    private static boolean truncated;
+
+    public static class Record {
+        private final String className;
+        private final String methodName;
+        private final String methodSignature;
+        private final long nanos;
+        private final long allocated;
+        private final STATUS status;
+        private final String thread;
+
+        public Record(
+                String className,
+                String methodName,
+                String methodSignature,
+                long nanos,
+                long allocated,
+                STATUS status,
+                String thread) {
+            this.className = className;
+            this.methodName = methodName;
+            this.methodSignature = methodSignature;
+            this.nanos = nanos;
+            this.allocated = allocated;
+            this.status = status;
+            this.thread = thread;
+        }
+
+        public String getClassName() {
+            return className;
+        }
+
+        public String getMethodName() {
+            return methodName;
+        }
+
+        /** @return Name and parameter types of the test method */
+        public String getMethodSignature() {
+            return methodSignature;
+        }
+
+        public long getNanos() {
+            return nanos;
+        }
+
+        public long getAllocated() {
+            return allocated;
+        }
+
+        public STATUS getStatus() {
+            return status;
+        }
+
+        public String getThread() {
+            return thread;
+        }
+    }
+
+    private static File initFile() {
+        String name = TestUtil.getProperty("test.report", null);
+        return name == null || name.length() == 0 ? null : new File(name);
+    }
+
+    public static boolean isEnabled() {
+        return file != null || TestHistory.isEnabled();
+    }
+
+    public static void add(Record record) {
+        if (!isEnabled()) return;
+        synchronized (TestReport.class) {
+            records.add(record);
+            if (file == null) return;
+            if (writer == null) {
+                writer = new Thread(TestReport::write, "TestReport");
+                writer.setDaemon(true);
+                writer.start();
+            }
+        }
+        queue.add(record);
+    }
+
+    /** Write the pending records, the summary and the history. Called at the end of the run. */
+    public static void finish() {
+        Thread w;
+        List<Record> all;
+        synchronized (TestReport.class) {
+            w = writer;
+            writer = null;
+            all = new ArrayList<>(records);
+            records.clear();
+        }
+        if (TestHistory.isEnabled()) TestHistory.update(all);
+        if (w == null) return;
+        queue.add(END);
+        try {
+            w.join(TimeUnit.MINUTES.toMillis(1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        writeSummary(all);
+    }
+
+    private static void write() {
+        List<Record> batch = new ArrayList<>(BATCH_SIZE);
+        StandardOpenOption mode;
+        synchronized (TestReport.class) {
+            // truncate the report of a previous run, but not of a previous plan in this run
+            mode = truncated ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING;
+            truncated = true;
+        }
+        try (Writer out =
+                Files.newBufferedWriter(
+                        file.toPath(),
+                        StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE,
+                        mode)) {
+            while (true) {
+                batch.add(queue.take());
+                queue.drainTo(batch, BATCH_SIZE - 1);
+                boolean end = false;
+                StringBuilder sb = new StringBuilder();
+                for (Record r : batch) {
+                    if (r == END) end = true;
+                    else toJson(sb, r);
+                }
+                batch.clear();
+                out.write(sb.toString());
+                out.flush();
+                if (end) return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static void writeSummary(List<Record> all) {
+        if (all.isEmpty()) return;
+        List<Record> tests = new ArrayList<>(all);
+        tests.sort(Comparator.comparingLong(Record::getNanos).reversed());
+        Map<String, Long> classes = new HashMap<>();
+        for (Record r : all) classes.merge(r.className, r.nanos, Long::sum);
+        List<Entry<String, Long>> classList = new ArrayList<>(classes.entrySet());
+        classList.sort(Entry.<String, Long>comparingByValue().reversed());
+
+        StringBuilder sb = new StringBuilder();
+        PrintStream out = TestConsole.getOut();
+        out.println();
+        out.println("--------------------------------------------------");
+        out.println("Slowest tests:");
+        for (int i = 0; i < slowest && i < tests.size(); i++) {
+            Record r = tests.get(i);
+            out.println(
+                    String.format(
+                            "%15d ns %-10s %s::%s", r.nanos, r.status, r.className, r.methodName));
+            sb.append("{\"type\":\"slowestTest\",\"rank\":").append(i + 1).append(',');
+            appendFields(sb, r);
+            sb.append("}\n");
+        }
+        out.println("Slowest classes:");
+        for (int i = 0; i < slowest && i < classList.size(); i++) {
+            Entry<String, Long> c = classList.get(i);
+            out.println(String.format("%15d ns %s", c.getValue(), c.getKey()));
+            sb.append("{\"type\":\"slowestClass\",\"rank\":").append(i + 1).append(",\"class\":");
+            appendString(sb, c.getKey());
+            sb.append(",\"nanos\":").append(c.getValue()).append("}\n");
+        }
+        out.println("Report: " + file.getAbsolutePath());
+        out.println("--------------------------------------------------");
+
+        try {
+            Files.write(
+                    file.toPath(),
+                    sb.toString().getBytes(StandardCharsets.UTF_8),
+                    StandardOpenOption.CREATE,
+                    StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static void toJson(StringBuilder sb, Record r) {
+        sb.append("{\"type\":\"test\",");
+        appendFields(sb, r);
+        sb.append("}\n");
+    }
+
+    private static void appendFields(StringBuilder sb, Record r) {
+        sb.append("\"class\":");
+        appendString(sb, r.className);
+        sb.append(",\"method\":");
+        appendString(sb, r.methodName);
+        sb.append(",\"nanos\":").append(r.nanos);
+        sb.append(",\"allocated\":").append(r.allocated);
+        sb.append(",\"status\":\"").append(r.status).append('"');
+        sb.append(",\"thread\":");
+        appendString(sb, r.thread);
+    }
+
+    private static void appendString(StringBuilder sb, String value) {
+        if (value == null) {
+            sb.append("null");
+            return;
+        }
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) sb.append(String.format("\\u%04x", (int) c));
+                    else sb.append(c);
+            }
+        }
+        sb.append('"');
+    }
+}
@@ -0,0 +1,48 @@
+/**
+ * Copyright (C) 2022 Mike Hummel (mh@mhus.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.summerclouds.common.junit;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.platform.launcher.TestExecutionListener;
+import org.junit.platform.launcher.TestPlan;
+import org.summerclouds.common.internal.TCast;
+import org.summerclouds.common.internal.TSpan;
+
+/**
+ * Registered as service to get notified at the end of the run. Writes the reports collected by the
+ * test cases and the summary of the warnings. With test.spans=&lt;file&gt; the TSpan timings are
+ * written as collapsed stacks, test.spans.perThread=true adds the thread name as root frame.
+ */
+public class TestRunListener implements TestExecutionListener {
+
+    @Override
+    public void testPlanExecutionFinished(TestPlan testPlan) {
+        TestReport.finish();
+        Warnings.printSummary(System.err);
+        String spans = TestUtil.getProperty("test.spans", null);
+        if (spans != null) {
+            try {
+                TSpan.writeCollapsed(
+                        new File(spans),
+                        TCast.toboolean(TestUtil.getProperty("test.spans.perThread", ""), false));
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
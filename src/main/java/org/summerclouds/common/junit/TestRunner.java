@@ -0,0 +1,138 @@
+/**
+ * Copyright (C) 2022 Mike Hummel (mh@mhus.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.summerclouds.common.junit;
+
+import static org.junit.platform.engine.discovery.DiscoverySelectors.selectClass;
+import static org.junit.platform.engine.discovery.DiscoverySelectors.selectClasspathRoots;
+import static org.junit.platform.engine.discovery.DiscoverySelectors.selectPackage;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.platform.launcher.Launcher;
+import org.junit.platform.launcher.LauncherDiscoveryRequest;
+import org.junit.platform.launcher.core.LauncherDiscoveryRequestBuilder;
+import org.junit.platform.launcher.core.LauncherFactory;
+import org.junit.platform.launcher.listeners.SummaryGeneratingListener;
+import org.junit.platform.launcher.listeners.TestExecutionSummary;
+import org.summerclouds.common.internal.TCast;
+
+/**
+ * Discovers and executes tests in parallel, e.g. for nightly runs outside of maven. The arguments
+ * are class names, package names or class path roots (directories or jars), without arguments all
+ * directories of the class path are scanned. The exit code is 1 if a test failed.
+ *
+ * <p>The progress is streamed by the ProgressListener, the per test banners are switched off and
+ * the console is captured per test. Configuration by system properties:
+ *
+ * <ul>
+ *   <li>test.parallel - execute in parallel, default true
+ *   <li>test.parallel.strategy - dynamic (threads = factor * cores) or fixed, default dynamic
+ *   <li>test.parallel.factor - factor for the dynamic strategy, default 1
+ *   <li>test.parallel.threads - number of threads for the fixed strategy, default cores
+ * </ul>
+ *
+ * junit.jupiter.execution.parallel.* properties given directly are not overwritten.
+ */
+public class TestRunner {
+
+    public static void main(String[] args) {
+        TestExecutionSummary summary = run(args);
+        System.exit(summary.getTotalFailureCount() == 0 ? 0 : 1);
+    }
+
+    public static TestExecutionSummary run(String... selectors) {
+        setDefault("test.progress", "true");
+        setDefault("test.banners", "false");
+
+        LauncherDiscoveryRequestBuilder builder = LauncherDiscoveryRequestBuilder.request();
+        if (selectors.length == 0) builder.selectors(selectClasspathRoots(getClasspathRoots()));
+        for (String selector : selectors) {
+            if (isPath(selector))
+                builder.selectors(selectClasspathRoots(Set.of(Path.of(selector))));
+            else if (isClass(selector)) builder.selectors(selectClass(selector));
+            else builder.selectors(selectPackage(selector));
+        }
+
+        boolean parallel = TCast.toboolean(TestUtil.getProperty("test.parallel", ""), true);
+        if (parallel) setDefault("test.parallelConsole", "true");
+        int cores = Runtime.getRuntime().availableProcessors();
+        configure(builder, "junit.jupiter.execution.parallel.enabled", String.valueOf(parallel));
+        configure(builder, "junit.jupiter.execution.parallel.mode.default", "concurrent");
+        configure(builder, "junit.jupiter.execution.parallel.mode.classes.default", "concurrent");
+        configure(
+                builder,
+                "junit.jupiter.execution.parallel.config.strategy",
+                TestUtil.getProperty("test.parallel.strategy", "dynamic"));
+        configure(
+                builder,
+                "junit.jupiter.execution.parallel.config.dynamic.factor",
+                TestUtil.getProperty("test.parallel.factor", "1"));
+        configure(
+                builder,
+                "junit.jupiter.execution.parallel.config.fixed.parallelism",
+                TestUtil.getProperty("test.parallel.threads", String.valueOf(cores)));
+        LauncherDiscoveryRequest request = builder.build();
+
+        SummaryGeneratingListener summary = new SummaryGeneratingListener();
+        Launcher launcher = LauncherFactory.create();
+        launcher.execute(request, summary);
+
+        PrintWriter out = new PrintWriter(TestConsole.getOut());
+        summary.getSummary().printTo(out);
+        summary.getSummary().printFailuresTo(out, 20);
+        out.flush();
+        return summary.getSummary();
+    }
+
+    private static void configure(
+            LauncherDiscoveryRequestBuilder builder, String key, String value) {
+        // the launcher reads system properties as fallback, they have precedence here
+        if (System.getProperty(key) == null) builder.configurationParameter(key, value);
+    }
+
+    private static void setDefault(String key, String value) {
+        if (TestUtil.getProperty(key, null) == null) System.setProperty(key, value);
+    }
+
+    private static boolean isPath(String name) {
+        // a package name could also be a directory in the working directory
+        return name.indexOf('/') >= 0
+                || name.indexOf(File.separatorChar) >= 0
+                || name.endsWith(".jar");
+    }
+
+    private static boolean isClass(String name) {
+        try {
+            Class.forName(name, false, Thread.currentThread().getContextClassLoader());
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+    private static Set<Path> getClasspathRoots() {
+        Set<Path> roots = new HashSet<>();
+        for (String entry : System.getProperty("java.class.path").split(File.pathSeparator)) {
+            File file = new File(entry);
+            if (file.isDirectory()) roots.add(file.toPath());
+        }
+        return roots;
+    }
+}
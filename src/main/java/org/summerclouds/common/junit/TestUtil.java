@@ -15,8 +15,6 @@
  */
 package org.summerclouds.common.junit;
 
-import static org.junit.jupiter.api.Assertions.assertEquals;
-
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
@@ -30,8 +28,6 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Properties;
-import java.util.Set;
-import java.util.TreeSet;
 import java.util.logging.Handler;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -40,9 +36,10 @@ import javax.xml.parsers.ParserConfigurationException;
 
 import org.junit.jupiter.api.TestInfo;
 import org.slf4j.LoggerFactory;
+import org.summerclouds.common.internal.TCast;
 import org.summerclouds.common.internal.TCloseable;
-import org.summerclouds.common.internal.TCrypt;
-import org.summerclouds.common.internal.TString;
+import org.summerclouds.common.internal.TJfr;
+import org.summerclouds.common.internal.TSystem;
 import org.summerclouds.common.internal.TUri;
 import org.summerclouds.common.internal.TXml;
 import org.w3c.dom.Document;
@@ -50,6 +47,9 @@ import org.xml.sax.SAXException;
 
 public class TestUtil {
 
+    // TestEvent, not linked if jdk.jfr is not available
+    private static final ThreadLocal<Object> testEvent = new ThreadLocal<>();
+
     public static void configureApacheCommonLogging(String logger, Level level) {
 
         try {
@@ -119,6 +119,21 @@ public class TestUtil {
 
     public static void enableDebug() {}
 
+    /**
+     * Return a test configuration value from the system properties, fallback is the environment.
+     *
+     * @param key Name of the value, e.g. test.parallelConsole
+     * @param def Default if not set
+     * @return The value or def
+     */
+    public static String getProperty(String key, String def) {
+        String ret = System.getProperty(key);
+        if (ret != null) return ret;
+        ret = TSystem.getenv(key);
+        if (ret != null) return ret;
+        return def;
+    }
+
     public static String getPluginVersion(String uriStr) {
         TUri uri = TUri.toUri(uriStr);
         String[] parts = uri.getPath().split("/");
@@ -132,7 +147,41 @@ public class TestUtil {
         return version;
     }
 
+    /**
+     * Return false if the per test banners are switched off by test.banners=false, e.g. by the
+     * TestRunner which streams the progress instead.
+     *
+     * @return true if banners are printed
+     */
+    public static boolean isBanners() {
+        return TCast.toboolean(getProperty("test.banners", ""), true);
+    }
+
+    /**
+     * Return the name and the parameter types of a method, e.g. "test(int,java.lang.String)".
+     * Unlike the name it is unique for overloaded methods.
+     *
+     * @param method The method
+     * @return The signature
+     */
+    public static String getMethodSignature(Method method) {
+        StringBuilder sb = new StringBuilder(method.getName()).append('(');
+        Class<?>[] types = method.getParameterTypes();
+        for (int i = 0; i < types.length; i++) {
+            if (i > 0) sb.append(',');
+            sb.append(types[i].getTypeName());
+        }
+        return sb.append(')').toString();
+    }
+
+    /**
+     * Print the start banner and begin the JFR test event.
+     *
+     * @param testInfo The test
+     */
     public static void start(TestInfo testInfo) {
+        beginEvent(testInfo);
+        if (!isBanners()) return;
         if (testInfo == null) {
             System.out.println(">>> unknown");
             return;
@@ -147,6 +196,18 @@ public class TestUtil {
     }
 
     public static void stop(TestInfo testInfo) {
+        stop(testInfo, null);
+    }
+
+    /**
+     * Print the end banner and commit the JFR test event.
+     *
+     * @param testInfo The test
+     * @param status Result of the test or null if unknown
+     */
+    public static void stop(TestInfo testInfo, TestReport.STATUS status) {
+        endEvent(status);
+        if (!isBanners()) return;
         if (testInfo == null) {
             System.out.println("<<< unknown");
             return;
@@ -160,7 +221,51 @@ public class TestUtil {
                         + (method == null || method.isEmpty() ? "?" : method.get().getName()));
     }
 
+    private static void beginEvent(TestInfo testInfo) {
+        if (!TJfr.isRecording()) return;
+        Object event =
+                TestEvent.start(
+                        testInfo == null
+                                ? null
+                                : testInfo.getTestClass().map(Class::getCanonicalName).orElse("?"),
+                        testInfo == null
+                                ? null
+                                : testInfo.getTestMethod().map(Method::getName).orElse("?"));
+        if (event != null) testEvent.set(event);
+    }
+
+    private static void endEvent(TestReport.STATUS status) {
+        Object event = testEvent.get();
+        if (event == null) return;
+        testEvent.remove();
+        TestEvent.stop(event, status == null ? null : status.name());
+    }
+
+    /**
+     * Overwrite environment variables until the returned object is closed. The values are only
+     * visible for the current thread and threads started by it, other tests running in parallel
+     * are not affected. Read them with TSystem.getenv(), TSystem.getProperty() or getProperty().
+     *
+     * <p>System.getenv() does not see the values, this method no longer changes the environment of
+     * the JVM. Use withGlobalEnvironment() for code calling System.getenv() directly.
+     *
+     * @param keyValue Pairs of name and value, a null value hides the variable
+     * @return Close to restore the environment
+     */
     public static TCloseable withEnvironment(String... keyValue) {
+        HashMap<String, String> values = new HashMap<>();
+        for (int i = 0; i < keyValue.length; i = i + 2) values.put(keyValue[i], keyValue[i + 1]);
+        return TSystem.overlayEnvironment(values);
+    }
+
+    /**
+     * Overwrite the environment variables of the JVM until the returned object is closed. All
+     * threads will see the change, this is not safe if tests are running in parallel.
+     *
+     * @param keyValue Pairs of name and value
+     * @return Close to restore the environment
+     */
+    public static TCloseable withGlobalEnvironment(String... keyValue) {
         HashMap<String, String> newenv = new HashMap<>(System.getenv());
         for (int i = 0; i < keyValue.length; i = i + 2) newenv.put(keyValue[i], keyValue[i + 1]);
 
@@ -220,83 +325,98 @@ public class TestUtil {
         }
     }
 
+    /**
+     * Validate the directory against the definition or record the definition if it not exists.
+     * Files with unchanged size and modification time since the last scan are not hashed again,
+     * set test.snapshot.strict=true to hash all files.
+     *
+     * <p>The size and modification time are cached in
+     * ${test.snapshot.cache:target/snapshots}, not in the definition. A change of the content
+     * keeping size and modification time of a file is not detected in the non strict mode, use it
+     * for local runs only.
+     *
+     * @param dir
+     * @param definition
+     * @throws Exception
+     */
     public static void recordOrValidateDirectory(File dir, File definition) throws Exception {
-        if (definition.exists()) validateDirectory(dir, definition);
+        recordOrValidateDirectory(
+                dir, definition, TCast.toboolean(getProperty("test.snapshot.strict", ""), false));
+    }
+
+    /**
+     * Validate the directory against the definition or record the definition if it not exists.
+     *
+     * @param dir
+     * @param definition
+     * @param strict Hash all files, otherwise files with unchanged size and modification time are
+     *     not hashed again
+     * @throws Exception
+     */
+    public static void recordOrValidateDirectory(File dir, File definition, boolean strict)
+            throws Exception {
+        if (definition.exists()) validateDirectory(dir, definition, strict);
         else recordDirectory(dir, definition);
     }
 
-    private static void validateDirectory(File dir, File definition) throws Exception {
+    private static void validateDirectory(File dir, File definition, boolean strict)
+            throws Exception {
         System.out.println(">>> Validate " + dir + " from " + definition);
-        int len = dir.getPath().length();
         Properties prop = new Properties();
         try (InputStream is = new FileInputStream(definition)) {
             prop.load(is);
         }
-        validateDirectory(dir, prop, len);
-    }
-
-    private static void validateDirectory(File dir, Properties definition, int remove)
-            throws Exception {
-        if (dir.isFile()) {
-            String md5 = "";
-            try (InputStream is = new FileInputStream(dir)) {
-                md5 = TCrypt.md5(is);
-            }
-            String old = definition.getProperty("file-" + dir.getPath().substring(remove));
-            assertEquals(old, md5, "File " + dir.getPath() + " is changed, new MD5: " + md5);
-        }
-        if (dir.isDirectory()) {
-            Set<String> dirs = new TreeSet<>();
-            Set<String> files = new TreeSet<>();
-            for (File sub : dir.listFiles()) {
-                if (!sub.getName().startsWith(".")) {
-                    if (sub.isFile()) files.add(sub.getName());
-                    else dirs.add(sub.getName());
-                    validateDirectory(sub, definition, remove);
-                }
-            }
-            String dirsStr = TString.join(dirs, ",");
-            String filesStr = TString.join(files, ",");
-            String dirsOld = definition.getProperty("dirs-" + dir.getPath().substring(remove));
-            String filesOld = definition.getProperty("files-" + dir.getPath().substring(remove));
-
-            assertEquals(dirsOld, dirsStr, "Directories in " + dir.getParent() + " changed");
-            assertEquals(filesOld, filesStr, "Files in " + dir.getParent() + " changed");
-        }
+        File cache = getSnapshotCache(definition);
+        Properties metadata = strict ? null : loadSnapshotCache(cache);
+        DirectorySnapshot snapshot = new DirectorySnapshot(dir).scan(metadata);
+        System.out.println(
+                ">>> Hashed "
+                        + snapshot.getHashedFiles()
+                        + " of "
+                        + snapshot.getFiles()
+                        + " files");
+        // the definition is versioned and never written while validating
+        storeSnapshotCache(cache, snapshot, metadata);
+        snapshot.validate(prop);
     }
 
     public static void recordDirectory(File dir, File definition) throws Exception {
         System.out.println(">>> Record " + dir + " to " + definition);
-        int len = dir.getPath().length();
-        Properties prop = new Properties();
-        recordDirectory(dir, prop, len);
+        DirectorySnapshot snapshot = new DirectorySnapshot(dir).scan();
+        Properties prop = snapshot.toProperties();
         try (OutputStream os = new FileOutputStream(definition)) {
             prop.store(os, dir.getPath());
         }
+        storeSnapshotCache(getSnapshotCache(definition), snapshot, null);
     }
 
-    private static void recordDirectory(File dir, Properties definition, int remove)
-            throws Exception {
-        if (dir.isFile()) {
-            try (InputStream is = new FileInputStream(dir)) {
-                String md5 = TCrypt.md5(is);
-                definition.setProperty("file-" + dir.getPath().substring(remove), md5);
-            }
+    private static File getSnapshotCache(File definition) {
+        String path = definition.getAbsolutePath();
+        return new File(
+                getProperty("test.snapshot.cache", "target/snapshots"),
+                definition.getName() + "-" + Integer.toHexString(path.hashCode()));
+    }
+
+    private static Properties loadSnapshotCache(File cache) {
+        if (!cache.exists()) return null;
+        Properties metadata = new Properties();
+        try (InputStream is = new FileInputStream(cache)) {
+            metadata.load(is);
+        } catch (IOException e) {
+            return null;
         }
-        if (dir.isDirectory()) {
-            Set<String> dirs = new TreeSet<>();
-            Set<String> files = new TreeSet<>();
-            for (File sub : dir.listFiles()) {
-                if (!sub.getName().startsWith(".")) {
-                    if (sub.isFile()) files.add(sub.getName());
-                    else dirs.add(sub.getName());
-                    recordDirectory(sub, definition, remove);
-                }
-            }
-            definition.setProperty(
-                    "dirs-" + dir.getPath().substring(remove), TString.join(dirs, ","));
-            definition.setProperty(
-                    "files-" + dir.getPath().substring(remove), TString.join(files, ","));
+        return metadata;
+    }
+
+    private static void storeSnapshotCache(
+            File cache, DirectorySnapshot snapshot, Properties metadata) {
+        if (!snapshot.isMetadataChanged(metadata)) return;
+        if (cache.getParentFile() != null) cache.getParentFile().mkdirs();
+        try (OutputStream os = new FileOutputStream(cache)) {
+            snapshot.toMetadata().store(os, null);
+        } catch (IOException e) {
+            // only a cache, the next run hashes the files again
+            e.printStackTrace();
         }
     }
 }
@@ -0,0 +1,131 @@
+/**
+ * Copyright (C) 2022 Mike Hummel (mh@mhus.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.summerclouds.common.junit;
+
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.extension.AfterAllCallback;
+import org.junit.jupiter.api.extension.BeforeAllCallback;
+import org.junit.jupiter.api.extension.ExtensionContext;
+import org.junit.jupiter.api.extension.ExtensionContext.Namespace;
+import org.summerclouds.common.internal.TCast;
+import org.summerclouds.common.internal.TString;
+import org.summerclouds.common.internal.TSystem;
+import org.summerclouds.common.internal.TSystem.TopThreadInfo;
+import org.summerclouds.common.internal.TThread;
+
+/**
+ * Compares the live threads after the test class with the threads before. Threads started by the
+ * tests and still running after test.threadLeak.wait milliseconds (default 1000) are reported with
+ * stack trace and cpu time. Set test.threadLeak.fail=true to fail the test class.
+ *
+ * <p>Threads of the common fork join pool, the JUnit workers and the background threads of this
+ * library are ignored, more name prefixes can be set comma separated in test.threadLeak.ignore.
+ * If test classes are running in parallel the threads of the other classes are reported as well.
+ *
+ * <p>Usage: @ExtendWith(ThreadLeakExtension.class)
+ */
+public class ThreadLeakExtension implements BeforeAllCallback, AfterAllCallback {
+
+    private static final Namespace NAMESPACE = Namespace.create(ThreadLeakExtension.class);
+    private static final String JUNIT_HIERARCHICAL =
+            "org.junit.platform.engine.support.hierarchical.";
+    private static final String[] IGNORE = {
+        "ForkJoinPool.commonPool-", "TestReport", "TConsoleWriter"
+    };
+
+    @Override
+    public void beforeAll(ExtensionContext context) throws Exception {
+        Set<Long> threads = new HashSet<>();
+        for (Thread thread : Thread.getAllStackTraces().keySet()) threads.add(thread.getId());
+        context.getStore(NAMESPACE).put("threads", threads);
+    }
+
+    @Override
+    public void afterAll(ExtensionContext context) throws Exception {
+        @SuppressWarnings("unchecked")
+        Set<Long> before = context.getStore(NAMESPACE).remove("threads", Set.class);
+        if (before == null) return;
+
+        long wait = TCast.tolong(TestUtil.getProperty("test.threadLeak.wait", ""), 1000);
+        long end = System.currentTimeMillis() + wait;
+        List<String> ignore = new ArrayList<>(Arrays.asList(IGNORE));
+        for (String prefix : TString.split(TestUtil.getProperty("test.threadLeak.ignore", ""), ","))
+            if (prefix.trim().length() > 0) ignore.add(prefix.trim());
+        List<TopThreadInfo> leaked = findLeaked(before, ignore);
+        while (!leaked.isEmpty() && System.currentTimeMillis() < end) {
+            // give executors the chance to shut down
+            TThread.sleep(50);
+            leaked = findLeaked(before, ignore);
+        }
+        if (leaked.isEmpty()) return;
+
+        String name = context.getRequiredTestClass().getCanonicalName();
+        StringBuilder sb = new StringBuilder();
+        sb.append("+++ ")
+                .append(leaked.size())
+                .append(" THREAD(S) LEAKED BY ")
+                .append(name)
+                .append('\n');
+        for (TopThreadInfo info : leaked) {
+            Thread thread = info.getThread();
+            sb.append("Thread ")
+                    .append(thread.getName())
+                    .append(" (id ")
+                    .append(thread.getId())
+                    .append(thread.isDaemon() ? ", daemon" : "")
+                    .append(", ")
+                    .append(thread.getState())
+                    .append(", cpu ")
+                    .append(info.getCpuTotal() / 1000000)
+                    .append("ms)\n");
+            for (StackTraceElement element : info.getStacktrace())
+                sb.append("    at ").append(element).append('\n');
+        }
+        System.err.print(sb);
+
+        if (TCast.toboolean(TestUtil.getProperty("test.threadLeak.fail", ""), false))
+            fail(leaked.size() + " thread(s) leaked by " + name);
+    }
+
+    private List<TopThreadInfo> findLeaked(Set<Long> before, List<String> ignore) {
+        List<TopThreadInfo> out = new ArrayList<>();
+        for (TopThreadInfo info : TSystem.threadInfo()) {
+            Thread thread = info.getThread();
+            if (before.contains(thread.getId()) || !thread.isAlive() || isIgnored(info, ignore))
+                continue;
+            out.add(info);
+        }
+        return out;
+    }
+
+    private boolean isIgnored(TopThreadInfo info, List<String> ignore) {
+        Thread thread = info.getThread();
+        for (String prefix : ignore) if (thread.getName().startsWith(prefix)) return true;
+        // parallel execution workers, also if they are idle
+        if (thread.getClass().getName().startsWith(JUNIT_HIERARCHICAL)) return true;
+        for (StackTraceElement element : info.getStacktrace())
+            if (element.getClassName()
+                    .startsWith("org.junit.platform.engine.support.hierarchical.")) return true;
+        return false;
+    }
+}
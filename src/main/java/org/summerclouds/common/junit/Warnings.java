@@ -15,21 +15,126 @@
  */
 package org.summerclouds.common.junit;
 
+import java.io.PrintStream;
+import java.lang.StackWalker.StackFrame;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
 import org.summerclouds.common.internal.TCast;
 
+/**
+ * Soft assertions printing a warning instead of failing the test. Warnings are deduplicated by the
+ * call site, only the first occurrence prints the full stack trace, all following are counted. A
+ * summary of all call sites is printed at the end of the run by the TestRunListener.
+ */
 public class Warnings {
 
+    private static final StackWalker WALKER = StackWalker.getInstance();
+    private static final Map<Site, Counter> sites = new ConcurrentHashMap<>();
+
     public static void warnTrue(boolean condition) {
-        if (!condition) {
-            System.err.println("+++ WARNING");
-            System.err.println(TCast.toString(new Throwable()));
-        }
+        if (!condition) warn();
     }
 
     public static void warnFalse(boolean condition) {
-        if (condition) {
-            System.err.println("+++ WARNING");
-            System.err.println(TCast.toString(new Throwable()));
+        if (condition) warn();
+    }
+
+    private static void warn() {
+        // frames: warn, warnTrue/warnFalse, caller
+        StackFrame frame = WALKER.walk(s -> s.skip(2).findFirst()).orElse(null);
+        Site site =
+                frame == null
+                        ? new Site("?", "?", "?", -1)
+                        : new Site(
+                                frame.getClassName(),
+                                frame.getMethodName(),
+                                frame.getDescriptor(),
+                                frame.getByteCodeIndex());
+        Counter counter = sites.get(site);
+        if (counter == null) {
+            Counter created =
+                    new Counter(frame == null ? "?" : frame.toStackTraceElement().toString());
+            counter = sites.putIfAbsent(site, created);
+            if (counter == null) {
+                created.count.increment();
+                System.err.println("+++ WARNING");
+                System.err.println(TCast.toString(new Throwable()));
+                return;
+            }
+        }
+        counter.count.increment();
+    }
+
+    /**
+     * Return the number of warnings of all call sites.
+     *
+     * @return Sum of all warnings
+     */
+    public static long getCount() {
+        long sum = 0;
+        for (Counter counter : sites.values()) sum += counter.count.sum();
+        return sum;
+    }
+
+    /**
+     * Print the call sites and the number of warnings, the most frequent first.
+     *
+     * @param out Target stream
+     */
+    public static void printSummary(PrintStream out) {
+        if (sites.isEmpty()) return;
+        List<Map.Entry<String, Long>> list = new ArrayList<>();
+        for (Counter counter : sites.values())
+            list.add(Map.entry(counter.location, counter.count.sum()));
+        list.sort((a, b) -> Long.compare(b.getValue(), a.getValue()));
+        out.println("+++ WARNINGS " + list.size() + " call sites");
+        for (Map.Entry<String, Long> entry : list)
+            out.println(String.format("%10d  %s", entry.getValue(), entry.getKey()));
+    }
+
+    private static class Site {
+        private final String className;
+        private final String methodName;
+        // overloaded methods share the name and can share the bci
+        private final String descriptor;
+        private final int bci;
+
+        private Site(String className, String methodName, String descriptor, int bci) {
+            this.className = className;
+            this.methodName = methodName;
+            this.descriptor = descriptor;
+            this.bci = bci;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Site)) return false;
+            Site s = (Site) o;
+            return bci == s.bci
+                    && className.equals(s.className)
+                    && methodName.equals(s.methodName)
+                    && descriptor.equals(s.descriptor);
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = className.hashCode();
+            hash = hash * 31 + methodName.hashCode();
+            hash = hash * 31 + descriptor.hashCode();
+            return hash * 31 + bci;
+        }
+    }
+
+    private static class Counter {
+        private final LongAdder count = new LongAdder();
+        private final String location;
+
+        private Counter(String location) {
+            this.location = location;
         }
     }
 }